@@ -0,0 +1,122 @@
+package farm;
+
+import farm.core.Farm;
+import farm.customer.ConcurrentAddressBook;
+import farm.customer.Customer;
+import farm.inventory.ConcurrentInventory;
+import farm.inventory.product.data.*;
+import farm.sales.transaction.Transaction;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures checkout throughput as the number of tills serving customers at once grows. Each till
+ * runs on its own virtual thread and its own session of a shared Farm, repeatedly starting a
+ * transaction, scanning a few products and checking out.
+ * <p>
+ * The tills are measured twice. In the first run scanning each product waits briefly, as a real
+ * till waits on its scanner; throughput then scales with the number of tills mostly because
+ * their waits overlap. In the second run scanning takes no time, so the tills do nothing but
+ * work on the Farm. The benchmark uses a thread-safe inventory, which the Farm uses without its
+ * stock lock, so throughput in that run can only grow with the tills on a machine with a core
+ * free for each of them.
+ * This file is for you to execute, it will not be marked.
+ */
+public class CheckoutBenchmark {
+
+    /**
+     * How long each configuration is measured for, in milliseconds.
+     */
+    private static final long RUN_MILLIS = 1000;
+
+    /**
+     * Number of products scanned in each checkout.
+     */
+    private static final int ITEMS = 4;
+
+    /**
+     * How long scanning a single product takes in each run, in milliseconds.
+     */
+    private static final long[] SCAN_MILLIS = {1, 0};
+
+    /**
+     * Number of products stocked of each barcode and quality whenever it runs out.
+     */
+    private static final int RESTOCK = 10_000;
+
+    /**
+     * Largest number of tills measured.
+     */
+    private static final int MAX_TILLS = 256;
+
+    /**
+     * Run the benchmark for till counts doubling up to MAX_TILLS, once for each scan time.
+     * @param args Parameters to the program, currently not supported.
+     */
+    public static void main(String[] args) throws Exception {
+        for (long scanMillis : SCAN_MILLIS) {
+            System.out.printf("%nScanning each product takes %d ms%n", scanMillis);
+            System.out.printf("%-8s %20s%n", "tills", "checkouts/s");
+            for (int tills = 1; tills <= MAX_TILLS; tills *= 2) {
+                System.out.printf("%-8d %20.1f%n", tills, measure(tills, scanMillis));
+            }
+        }
+    }
+
+    /**
+     * Runs the given number of tills against a fresh farm for RUN_MILLIS, scanning each product
+     * for scanMillis, returning the combined number of checkouts completed per second.
+     */
+    private static double measure(int tills, long scanMillis) throws Exception {
+        Farm farm = new Farm(new ConcurrentInventory(), new ConcurrentAddressBook());
+        Barcode[] barcodes = Barcode.values();
+        for (Barcode barcode : barcodes) {
+            farm.stockProduct(barcode, Quality.REGULAR, RESTOCK);
+        }
+        LongAdder completed = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[tills];
+        long deadline = System.nanoTime() + RUN_MILLIS * 1_000_000;
+        for (int t = 0; t < tills; t++) {
+            String session = "till-" + t;
+            Customer customer = new Customer("Customer " + t, t, "Farm Road");
+            farm.saveCustomer(customer);
+            workers[t] = Thread.ofVirtual().name(session).unstarted(() -> {
+                try {
+                    start.await();
+                    long checkouts = 0;
+                    while (System.nanoTime() < deadline) {
+                        farm.startTransaction(session, new Transaction(customer));
+                        for (int i = 0; i < ITEMS; i++) {
+                            Barcode barcode = barcodes[(int) ((checkouts + i) % barcodes.length)];
+                            if (scanMillis > 0) {
+                                Thread.sleep(scanMillis);
+                            }
+                            if (farm.addToCart(session, barcode) == 0) {
+                                farm.stockProduct(barcode, Quality.REGULAR, RESTOCK);
+                                farm.addToCart(session, barcode);
+                            }
+                        }
+                        farm.checkout(session);
+                        checkouts++;
+                    }
+                    completed.add(checkouts);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        int recorded = farm.getTransactionHistory().getTotalTransactionsMade();
+        if (recorded != completed.intValue()) {
+            throw new IllegalStateException("Recorded " + recorded + " of "
+                    + completed.intValue() + " checkouts.");
+        }
+        return completed.doubleValue() * 1000 / RUN_MILLIS;
+    }
+}
@@ -0,0 +1,95 @@
+package farm;
+
+import farm.inventory.*;
+import farm.inventory.product.data.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures inventory throughput under contention, comparing a ConcurrentInventory against a
+ * FancyInventory guarded by a single lock. Each thread repeatedly stocks and then sells a small
+ * batch of products, spread across all barcodes and qualities.
+ * This file is for you to execute, it will not be marked.
+ */
+public class InventoryBenchmark {
+
+    /**
+     * How long each configuration is measured for, in milliseconds.
+     */
+    private static final long RUN_MILLIS = 1000;
+
+    /**
+     * Number of products stocked and then sold in each operation.
+     */
+    private static final int BATCH = 4;
+
+    /**
+     * Run the benchmark for thread counts doubling up to the number of available cores.
+     * @param args Parameters to the program, currently not supported.
+     */
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-8s %20s %20s%n", "threads", "synchronized ops/ms", "concurrent ops/ms");
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            FancyInventory fancy = new FancyInventory();
+            double locked = measure(threads, (barcode, quality) -> {
+                synchronized (fancy) {
+                    fancy.addProduct(barcode, quality, BATCH);
+                }
+                synchronized (fancy) {
+                    fancy.removeProduct(barcode, BATCH);
+                }
+            });
+            ConcurrentInventory concurrent = new ConcurrentInventory();
+            double lockFree = measure(threads, (barcode, quality) -> {
+                concurrent.addProduct(barcode, quality, BATCH);
+                concurrent.removeProduct(barcode, BATCH);
+            });
+            System.out.printf("%-8d %20.1f %20.1f%n", threads, locked, lockFree);
+        }
+    }
+
+    /**
+     * A single stock-then-sell operation against the inventory under test.
+     */
+    private interface Operation {
+        void run(Barcode barcode, Quality quality) throws Exception;
+    }
+
+    /**
+     * Runs the operation on the given number of threads for RUN_MILLIS,
+     * returning the combined number of operations completed per millisecond.
+     */
+    private static double measure(int threads, Operation operation) throws InterruptedException {
+        Barcode[] barcodes = Barcode.values();
+        Quality[] qualities = Quality.values();
+        LongAdder completed = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long deadline = System.nanoTime() + RUN_MILLIS * 1_000_000;
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    long ops = 0;
+                    while (System.nanoTime() < deadline) {
+                        operation.run(barcodes[(int) ((ops + offset) % barcodes.length)],
+                                qualities[(int) (ops % qualities.length)]);
+                        ops++;
+                    }
+                    completed.add(ops);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return completed.doubleValue() / RUN_MILLIS;
+    }
+}
@@ -1,6 +1,11 @@
 package farm;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import farm.core.*;
 import farm.inventory.product.data.*;
 
@@ -26,58 +31,76 @@ public class Main {
      * Start the farm program.
      * @param args Parameters to the program, currently not supported.
      */
-    public static void main(String[] args) throws DuplicateCustomerException { // Stage 1
+    public static void main(String[] args)
+            throws DuplicateCustomerException, IOException, InterruptedException { // Stage 1
 
         // Stage 0: Completion of AddressBook and Customer at stage
-        AddressBook addressBook = new AddressBook();
-        Customer customer = new Customer("Ali", 33651111, "UQ");
-        addressBook.addCustomer(customer);
-        for (String name : List.of("James", "Alex", "Lauren")) {
-            addressBook.addCustomer(new Customer(name, 1234, "1st Street"));
+        // Customers are kept in a durable address book so that they survive restarts,
+        // only adding the starting customers the first time the farm is run
+        DurableAddressBook addressBook = DurableAddressBook.open(Path.of("farm-data"));
+        if (addressBook.size() == 0) {
+            addressBook.addCustomer(new Customer("Ali", 33651111, "UQ"));
+            for (String name : List.of("James", "Alex", "Lauren")) {
+                addressBook.addCustomer(new Customer(name, 1234, "1st Street"));
+            }
         }
-        System.out.println(addressBook.getAllRecords());
+        Customer customer = addressBook.getRecord(0);
+        System.out.println(addressBook.getRecordsView());
 
         // Stage 1: Products + Transactions
         System.out.println("\n");
-        System.out.println(new Milk(Quality.IRIDIUM));
+        System.out.println(ProductFactory.getProduct(Barcode.MILK, Quality.IRIDIUM));
+        Product milk = ProductFactory.getProduct(Barcode.MILK, Quality.REGULAR);
+        Product egg = ProductFactory.getProduct(Barcode.EGG, Quality.REGULAR);
 
         Transaction transaction = new Transaction(customer);
         for (int i = 0; i < 3; i++) {
-            transaction.getAssociatedCustomer().getCart().addProduct(new Milk());
+            transaction.getCart().addProduct(milk);
         }
-        transaction.getAssociatedCustomer().getCart().addProduct(new Egg());
-        transaction.getAssociatedCustomer().getCart().addProduct(new Milk());
+        transaction.getCart().addProduct(egg);
+        transaction.getCart().addProduct(milk);
         transaction.finalise();
         System.out.println("\n");
         System.out.println(transaction.getReceipt());
         transaction = new SpecialSaleTransaction(customer);
         for (int i = 0; i < 3; i++) {
-            transaction.getAssociatedCustomer().getCart().addProduct(new Milk());
+            transaction.getCart().addProduct(milk);
         }
-        transaction.getAssociatedCustomer().getCart().addProduct(new Egg());
-        transaction.getAssociatedCustomer().getCart().addProduct(new Milk());
+        transaction.getCart().addProduct(egg);
+        transaction.getCart().addProduct(milk);
         transaction.finalise();
         System.out.println("\n".repeat(3));
         System.out.println(transaction.getReceipt());
 
         // Stage 2 + 3: Combining them together
 
-        Inventory inventory = new BasicInventory();
-        boolean fancy = false;
-
-        // Keep removed for Stage 2 but add when Stage 3 is done
-        inventory = new FancyInventory();
-        fancy = true;
-
-        for (Barcode barcode : List.of(Barcode.MILK, Barcode.EGG, Barcode.WOOL, Barcode.EGG)) {
-            for (Quality quality : List.of(Quality.REGULAR, Quality.SILVER, Quality.REGULAR,
-                    Quality.GOLD, Quality.REGULAR, Quality.REGULAR, Quality.IRIDIUM)) {
-                inventory.addProduct(barcode, quality);
+        // Stock is kept in a durable inventory so that it survives restarts,
+        // only stocking the starting products the first time the farm is run
+        DurableInventory inventory = DurableInventory.open(Path.of("farm-data"));
+        boolean fancy = inventory.getCapabilities().contains(InventoryCapability.QUANTITIES);
+        if (inventory.streamProducts().findAny().isEmpty()) {
+            for (Barcode barcode : List.of(Barcode.MILK, Barcode.EGG, Barcode.WOOL, Barcode.EGG)) {
+                for (Quality quality : List.of(Quality.REGULAR, Quality.SILVER, Quality.REGULAR,
+                        Quality.GOLD, Quality.REGULAR, Quality.REGULAR, Quality.IRIDIUM)) {
+                    inventory.addProduct(barcode, quality);
+                }
             }
         }
 
-        FarmManager manager = new FarmManager(new Farm(inventory, addressBook),
-                new ShopFront(), fancy);
+        // Products left in idle carts are returned to stock in the background
+        Farm farm = new Farm(inventory, addressBook);
+        ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "hold-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        farm.scheduleHoldExpiry(expiry, 1000);
+
+        FarmManager manager = new FarmManager(farm, new ShopFront(), fancy);
         manager.run();
+        expiry.shutdown();
+        expiry.awaitTermination(1, TimeUnit.MINUTES);
+        inventory.close();
+        addressBook.close();
     }
 }
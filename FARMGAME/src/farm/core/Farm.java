@@ -6,15 +6,39 @@ import farm.inventory.product.data.*;
 import farm.inventory.*;
 import farm.sales.transaction.Transaction;
 import farm.sales.*;
-import farm.customer.AddressBook;
+import farm.sales.reservation.ReservationManager;
+import farm.customer.CustomerDirectory;
 
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
  * Top-level model class responsible for storing and making updates to the data and
  * smaller model entities that make up the internal state of a farm.
+ * <p>
+ * Several tills may serve customers at once, each running its own transaction in a session
+ * named by the till. The stock and the holds placed on it are shared between the tills. A cart
+ * is only filled and checked out while holding its monitor, as expiring a hold takes products
+ * back out of it. If the inventory is not thread-safe, every change to the stock is also made
+ * under a single stock lock; a thread-safe inventory is used without it, so tills only wait on
+ * each other inside the inventory and while the holds are briefly updated. Methods that do not
+ * name a session act on TransactionManager.DEFAULT_SESSION.
+ * <p>
+ * Checkouts may optionally be passed to a CheckoutPipeline, which records them and renders their
+ * receipts in the background. The history then lags slightly behind the tills until the
+ * pipeline is flushed.
  */
 public class Farm {
+    /**
+     * How long products added to a cart are held for before returning to stock, by default.
+     */
+    private static final long DEFAULT_HOLD_MILLIS = 15 * 60 * 1000;
+
     /**
      * The inventory through which access to the farm's stock is provisioned.
      */
@@ -23,7 +47,7 @@ public class Farm {
     /**
      * The address book storing the farm's customer records.
      */
-    private final AddressBook addressBook;
+    private final CustomerDirectory addressBook;
 
     /**
      * TransactionManager of the farm.
@@ -35,14 +59,41 @@ public class Farm {
      */
     private final TransactionHistory transactionHistory;
 
+    /**
+     * Holds on stock added to carts that have not yet been checked out.
+     */
+    private final ReservationManager reservations;
+
+    /**
+     * Guards the inventory, which tills share, or null if the inventory is thread-safe.
+     */
+    private final Lock stockLock;
+
+    /**
+     * Completes checkouts in the background, or null to complete them on the till's thread.
+     */
+    private volatile CheckoutPipeline checkoutPipeline;
+
     /**
      * Creates a new farm instance with an inventory and address book supplied.
      */
-    public Farm(Inventory inventory, AddressBook addressBook) {
+    public Farm(Inventory inventory, CustomerDirectory addressBook) {
+        this(inventory, addressBook, DEFAULT_HOLD_MILLIS);
+    }
+
+    /**
+     * Creates a new farm instance with an inventory and address book supplied, holding
+     * products added to a cart for the given number of milliseconds before returning
+     * them to stock if the cart has not been checked out.
+     */
+    public Farm(Inventory inventory, CustomerDirectory addressBook, long holdMillis) {
         this.inventory = inventory;
         this.addressBook = addressBook;
         this.transactionManager = new TransactionManager();
         this.transactionHistory = new TransactionHistory();
+        this.reservations = new ReservationManager(inventory, holdMillis);
+        this.stockLock = inventory.getCapabilities().contains(InventoryCapability.THREAD_SAFE)
+                ? null : new ReentrantLock();
     }
 
     /**
@@ -56,65 +107,163 @@ public class Farm {
      * Sets the provided transaction as the current ongoing transaction.
      */
     public void startTransaction(Transaction transaction) throws FailedTransactionException {
-        // Ensure that no other transaction is currently ongoing
-        if (transactionManager.hasOngoingTransaction()) {
+        startTransaction(TransactionManager.DEFAULT_SESSION, transaction);
+    }
+
+    /**
+     * Sets the provided transaction as the ongoing transaction of the given session.
+     */
+    public void startTransaction(String session, Transaction transaction)
+            throws FailedTransactionException {
+        // Ensure that no other transaction is currently ongoing in the session
+        if (transactionManager.hasOngoingTransaction(session)) {
             throw new FailedTransactionException("A transaction is already ongoing.");
         }
-        transactionManager.setOngoingTransaction(transaction);
+        expireHolds();
+        transactionManager.setOngoingTransaction(session, transaction);
     }
 
     /**
      * Attempts to add a single product of the given type to the customer's shopping cart.
      */
     public int addToCart(Barcode barcode) throws FailedTransactionException {
-        // Ensure that a transaction is currently ongoing before proceeding
-        checkTransactionOngoing();
+        return addToCart(TransactionManager.DEFAULT_SESSION, barcode);
+    }
 
-        // Attempt to remove the product from inventory
-        List<Product> products = inventory.removeProduct(barcode);
-        if (products.isEmpty()) {
-            return 0; // No product found, return 0 indicating failure to add to cart
-        }
-        // Register the product in the ongoing transaction
-        transactionManager.registerPendingPurchase(products.getFirst());
-        return 1; // Return 1 indicating success
+    /**
+     * Attempts to add a single product of the given type to the shopping cart of the
+     * transaction ongoing in the given session.
+     */
+    public int addToCart(String session, Barcode barcode) throws FailedTransactionException {
+        return addToCart(session, barcode, 1);
     }
 
     /**
      * Attempts to add the specified number of products of the given type to the customer's shopping cart.
      */
     public int addToCart(Barcode barcode, int quantity) throws FailedTransactionException {
+        return addToCart(TransactionManager.DEFAULT_SESSION, barcode, quantity);
+    }
+
+    /**
+     * Attempts to add the specified number of products of the given type to the shopping cart
+     * of the transaction ongoing in the given session.
+     */
+    public int addToCart(String session, Barcode barcode, int quantity)
+            throws FailedTransactionException {
         // Ensure that a transaction is currently ongoing before proceeding
-        checkTransactionOngoing();
+        checkTransactionOngoing(session);
 
-        // Attempt to remove the specified quantity of the product from inventory
-        List<Product> products = inventory.removeProduct(barcode, quantity);
-        if (products.isEmpty()) {
-            return 0; // No products found, return 0 indicating failure to add to cart
-        }
+        Cart cart = ongoingCart(session);
+        lockStock();
+        try {
+            reservations.expireHolds();
+            // Expiring holds takes products out of carts, so the cart is filled under its monitor
+            synchronized (cart) {
+                // Attempt to hold the specified quantity of the product from inventory
+                List<Product> products = reservations.hold(cart, barcode, quantity);
 
-        // Register each product in the ongoing transaction
-        for (Product product : products) {
-            transactionManager.registerPendingPurchase(product);
+                // Register each product in the ongoing transaction
+                for (Product product : products) {
+                    transactionManager.registerPendingPurchase(session, product);
+                }
+                // Return the number of products added, 0 indicating failure to add to cart
+                return products.size();
+            }
+        } finally {
+            unlockStock();
         }
-        return products.size(); // Return the number of products successfully added to the cart
     }
 
     /**
      * Closes the ongoing transaction.
      */
     public boolean checkout() throws FailedTransactionException {
+        return checkout(TransactionManager.DEFAULT_SESSION);
+    }
+
+    /**
+     * Closes the transaction ongoing in the given session.
+     */
+    public boolean checkout(String session) throws FailedTransactionException {
         // Ensure that a transaction is currently ongoing before proceeding
-        checkTransactionOngoing();
+        checkTransactionOngoing(session);
+
+        // Commit the products still held for the cart, so they stay sold and can no longer
+        // be taken back out of the cart by expiry
+        Cart cart = ongoingCart(session);
+        lockStock();
+        try {
+            reservations.expireHolds();
+            reservations.commit(cart);
+        } finally {
+            unlockStock();
+        }
 
         // Finalize the transaction and record it in the transaction history
-        Transaction transaction = transactionManager.closeCurrentTransaction();
-        if (transaction.getPurchases().isEmpty()) {
+        Transaction transaction = transactionManager.closeCurrentTransaction(session);
+        if (transaction.getPurchaseCount() == 0) {
             return false; // No products purchased, return false indicating unsuccessful checkout
         }
 
-        transactionHistory.recordTransaction(transaction);
-        return true; // Return true indicating successful checkout
+        CheckoutPipeline pipeline = checkoutPipeline;
+        if (pipeline == null) {
+            transactionHistory.recordTransaction(transaction);
+            return true; // Return true indicating successful checkout
+        }
+        try {
+            pipeline.submit(transaction);
+        } catch (InterruptedException e) {
+            // The sale has been made, so record it here rather than lose it
+            Thread.currentThread().interrupt();
+            transactionHistory.recordTransaction(transaction);
+        } catch (IllegalStateException e) {
+            // The pipeline is closed or has failed, and did not take the sale. Record it here,
+            // along with any earlier sales the pipeline failed to record
+            transactionHistory.recordTransaction(transaction);
+            pipeline.recordUnrecorded();
+        }
+        return true;
+    }
+
+    /**
+     * Abandons the ongoing transaction, returning the products held for its cart to stock.
+     */
+    public void abandonTransaction() throws FailedTransactionException {
+        abandonTransaction(TransactionManager.DEFAULT_SESSION);
+    }
+
+    /**
+     * Abandons the transaction ongoing in the given session, returning the products held for
+     * its cart to stock. Nothing is recorded in the transaction history.
+     */
+    public void abandonTransaction(String session) throws FailedTransactionException {
+        Transaction transaction = transactionManager.abandonCurrentTransaction(session);
+        lockStock();
+        try {
+            reservations.release(transaction.getCart());
+        } finally {
+            unlockStock();
+        }
+        // Finalising the emptied transaction hands its cart back to the pool.
+        transaction.getCart().setEmpty();
+        transaction.finalise();
+    }
+
+    /**
+     * Passes future checkouts to the given pipeline, which should record them in this farm's
+     * transaction history, or completes them on the till's thread again if it is null.
+     */
+    public void setCheckoutPipeline(CheckoutPipeline pipeline) {
+        this.checkoutPipeline = pipeline;
+    }
+
+    /**
+     * Retrieves the pipeline checkouts are passed to, or null if they are completed on the
+     * till's thread.
+     */
+    public CheckoutPipeline getCheckoutPipeline() {
+        return checkoutPipeline;
     }
 
     /**
@@ -128,7 +277,51 @@ public class Farm {
      * Retrieves all products currently stored in the farm's inventory.
      */
     public List<Product> getAllStock() {
-        return inventory.getAllProducts();
+        lockStock();
+        try {
+            reservations.expireHolds();
+            return inventory.getAllProducts();
+        } finally {
+            unlockStock();
+        }
+    }
+
+    /**
+     * Walks the products currently stored in the farm's inventory without copying them,
+     * one group of products sharing a barcode and quality at a time.
+     */
+    public void forEachStock(StockVisitor visitor) {
+        lockStock();
+        try {
+            reservations.expireHolds();
+            inventory.forEachStock(visitor);
+        } finally {
+            unlockStock();
+        }
+    }
+
+    /**
+     * Streams the products currently stored in the farm's inventory without copying them.
+     * The stream is read after this returns, so it should only be used while no till is
+     * serving a customer, unless the inventory is itself thread-safe.
+     */
+    public Stream<Product> streamStock() {
+        expireHolds();
+        return inventory.streamProducts();
+    }
+
+    /**
+     * Takes an immutable, point-in-time copy of the farm's stock for reporting, which stays
+     * consistent while sales continue to change the live inventory.
+     */
+    public InventorySnapshot getStockSnapshot() {
+        lockStock();
+        try {
+            reservations.expireHolds();
+            return inventory.snapshot();
+        } finally {
+            unlockStock();
+        }
     }
 
     /**
@@ -165,7 +358,12 @@ public class Farm {
      * Adds a single product of the specified type and quality to the farm's inventory.
      */
     public void stockProduct(Barcode barcode, Quality quality) {
-        inventory.addProduct(barcode, quality);
+        lockStock();
+        try {
+            inventory.addProduct(barcode, quality);
+        } finally {
+            unlockStock();
+        }
     }
 
     /**
@@ -176,26 +374,92 @@ public class Farm {
         if (quantity < 1) {
             throw new IllegalArgumentException("Quantity must be at least 1.");
         }
-        // Handle stocking differently based on the type of inventory
-        if (!(inventory instanceof FancyInventory)) {
-            if (quantity > 1) {
-                throw new InvalidStockRequestException("Only FancyInventory supports adding more "
-                        + "than one product at a time.");
-            }
-            inventory.addProduct(barcode, quality);
-            // Stock a single product if quantity is 1
-        } else {
+        // Only inventories supporting quantities may stock more than one product at a time
+        boolean supportsQuantities =
+                inventory.getCapabilities().contains(InventoryCapability.QUANTITIES);
+        if (quantity > 1 && !supportsQuantities) {
+            throw new InvalidStockRequestException("Current inventory does not support adding "
+                    + "more than one product at a time.");
+        }
+        lockStock();
+        try {
             inventory.addProduct(barcode, quality, quantity);
-            // Stock multiple products if supported
+        } finally {
+            unlockStock();
+        }
+    }
+
+    /**
+     * Adds every product listed in the manifest to the farm's inventory in a single pass.
+     */
+    public void stockProducts(StockManifest manifest) throws InvalidStockRequestException {
+        lockStock();
+        try {
+            inventory.addProducts(manifest);
+        } finally {
+            unlockStock();
+        }
+    }
+
+    /**
+     * Returns any held products whose hold time has passed to the farm's inventory,
+     * taking them back out of the cart they were held for.
+     */
+    public void expireHolds() {
+        lockStock();
+        try {
+            reservations.expireHolds();
+        } finally {
+            unlockStock();
+        }
+    }
+
+    /**
+     * Expires holds on the given scheduler every periodMillis milliseconds, so that products left
+     * in idle carts return to stock even while no till is in use. Cancelling the returned future
+     * stops the expiry.
+     */
+    public ScheduledFuture<?> scheduleHoldExpiry(ScheduledExecutorService scheduler,
+                                                 long periodMillis) {
+        return scheduler.scheduleAtFixedRate(this::expireHolds, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the stock lock, if the inventory needs one.
+     */
+    private void lockStock() {
+        if (stockLock != null) {
+            stockLock.lock();
+        }
+    }
+
+    /**
+     * Releases the stock lock taken by lockStock.
+     */
+    private void unlockStock() {
+        if (stockLock != null) {
+            stockLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the cart of the transaction ongoing in the given session.
+     */
+    private Cart ongoingCart(String session) throws FailedTransactionException {
+        Transaction transaction = transactionManager.getOngoingTransaction(session);
+        if (transaction == null) {
+            throw new FailedTransactionException("No ongoing transaction in this session.");
         }
+        return transaction.getCart();
     }
 
     /**
-     * Checks if a transaction is ongoing and throws an exception if none is found.
+     * Checks if a transaction is ongoing in the session and throws an exception if none is found.
      */
-    private void checkTransactionOngoing() throws FailedTransactionException {
+    private void checkTransactionOngoing(String session) throws FailedTransactionException {
         // Throw an exception if no transaction is currently ongoing
-        if (!transactionManager.hasOngoingTransaction()) {
+        if (!transactionManager.hasOngoingTransaction(session)) {
             throw new FailedTransactionException("Cannot add to cart when no "
                     + "customer has started shopping.");
         }
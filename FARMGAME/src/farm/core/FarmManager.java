@@ -1,7 +1,9 @@
 package farm.core;
 
 import farm.customer.Customer;
-import farm.inventory.product.Product;
+import farm.inventory.StockVisitor;
+import farm.inventory.product.ProductCatalog;
+import farm.inventory.product.ProductFactory;
 import farm.inventory.product.data.*;
 import farm.sales.TransactionHistory;
 import farm.sales.transaction.*;
@@ -219,24 +221,66 @@ public class FarmManager {
             switch (input.getFirst()) {
                 case "q" -> running = false;
                 case "add" -> handleInventoryAddRequest(input);
-                case "list" -> {
-                    int count = 1;
-                    List<Product> stock = farm.getAllStock();
-                    if (stock.isEmpty()) {
-                        shop.displayMessage("Inventory is empty.");
-                    } else {
-                        StringBuilder builder = new StringBuilder("{" + stock.getFirst());
-                        for (Product product : stock.subList(1, stock.size())) {
-                            builder.append(",").append("\t\t");
-                            if (count % 4 == 0) {
-                                builder.append("\n");
-                            }
-                            builder.append(product.toString());
-                            count++;
-                        }
-                        shop.displayMessage(builder.append("}").toString());
-                    }
-                }
+                case "list" -> listInventory();
+            }
+        }
+    }
+
+    /**
+     * Displays the farm's stock grouped by barcode and quality, one row of groups at a time,
+     * without copying the inventory.
+     */
+    private void listInventory() {
+        InventoryLister lister = new InventoryLister();
+        farm.forEachStock(lister);
+        if (lister.groups == 0) {
+            shop.displayMessage("Inventory is empty.");
+        } else {
+            lister.flush();
+        }
+    }
+
+    /**
+     * Collects groups of stock into rows, displaying each row as soon as it is full.
+     */
+    private class InventoryLister implements StockVisitor {
+        /**
+         * Number of groups of stock displayed on each row.
+         */
+        private static final int GROUPS_PER_ROW = 4;
+
+        /**
+         * Groups collected for the row being built.
+         */
+        private final StringBuilder row = new StringBuilder();
+
+        /**
+         * Number of groups visited so far.
+         */
+        private int groups = 0;
+
+        /**
+         * Adds a group of stock to the current row, displaying the row once it is full.
+         */
+        @Override
+        public void visit(Barcode barcode, Quality quality, int count) {
+            if (groups % GROUPS_PER_ROW != 0) {
+                row.append(",\t\t");
+            }
+            row.append(ProductFactory.getProduct(barcode, quality)).append(" x").append(count);
+            groups++;
+            if (groups % GROUPS_PER_ROW == 0) {
+                flush();
+            }
+        }
+
+        /**
+         * Displays the groups collected for the current row, if there are any.
+         */
+        private void flush() {
+            if (!row.isEmpty()) {
+                shop.displayMessage(row.toString());
+                row.setLength(0);
             }
         }
     }
@@ -271,7 +315,7 @@ public class FarmManager {
                 case "q" -> {
                     if (farm.getTransactionManager().hasOngoingTransaction()) {
                         shop.displayMessage("You have a transaction in progress. Please check out "
-                                + "before quitting sales mode or your inventory may be corrupted.");
+                                + "or abandon it before quitting sales mode.");
                     } else {
                         running = false;
                     }
@@ -279,6 +323,7 @@ public class FarmManager {
                 case "start" -> handleStartTransaction(input);
                 case "add" -> handleTransactionAddRequest(input);
                 case "checkout" -> handleCheckoutRequest();
+                case "abandon" -> handleAbandonRequest();
             }
         }
     }
@@ -373,6 +418,15 @@ public class FarmManager {
         }
     }
 
+    private void handleAbandonRequest() {
+        try {
+            farm.abandonTransaction();
+            shop.displayMessage("Transaction abandoned; its products are back in stock.");
+        } catch (FailedTransactionException e) {
+            shop.displayMessage("Abandon request failed: " + e.getMessage());
+        }
+    }
+
     private void handleTransactionAddRequest(List<String> cmdInput) {
         if (cmdInput.size() == 2 || cmdInput.size() == 3) {
 
@@ -506,13 +560,17 @@ public class FarmManager {
      * Private Helper Methods
      **/
     private Barcode convertProductName(String productName) throws InvalidStockRequestException {
-        return switch (productName) {
-            case "egg" -> Barcode.EGG;
-            case "milk" -> Barcode.MILK;
-            case "jam" -> Barcode.JAM;
-            case "wool" -> Barcode.WOOL;
-            default -> throw new InvalidStockRequestException("Invalid product name provided: "
+        int id = ProductCatalog.lookup(productName);
+        if (id < 0) {
+            throw new InvalidStockRequestException("Invalid product name provided: "
                     + productName);
-        };
+        }
+        // Products registered at runtime have no barcode, so cannot be stocked or sold here.
+        Barcode barcode = ProductCatalog.toBarcode(id);
+        if (barcode == null) {
+            throw new InvalidStockRequestException(ProductCatalog.getName(id)
+                    + " is in the catalog but cannot be stocked or sold.");
+        }
+        return barcode;
     }
 }
\ No newline at end of file
@@ -106,7 +106,7 @@ public class ShopFront {
      * @hidden
      */
     public List<String> promptSalesCmd() {
-        Set<String> commands = Set.of("q", "start", "add", "checkout");
+        Set<String> commands = Set.of("q", "start", "add", "checkout", "abandon");
         String helpMsg = """
             Command Options:
             - q: Quit the sales mode.
@@ -116,6 +116,7 @@ public class ShopFront {
                                    ** Note: There must already be an ongoing transaction. **
             - add -o: List all the product type options available to be sold.
             - checkout: Finalise the sale of the products in the current customer's cart.
+            - abandon: Return the products in the current customer's cart to stock without a sale.
             """;
         return List.of(modePromptHandler("SALES", commands, helpMsg));
     }
@@ -7,57 +7,312 @@ import farm.core.*;
 /**
  * A class where farmers store their customers' details.
  * Keeps track of all the customers that come and visit the Farm.
+ * <p>
+ * Customers are indexed by name and phone number, and separately by phone number, so lookups
+ * and duplicate checks take constant time however many customers are stored. Tries over names
+ * and phone numbers support searching by prefix and by names within a few typing mistakes; they
+ * are only built once the first search is made. The indexes follow customers as their names and
+ * phone numbers are edited.
  */
-public class AddressBook {
+public class AddressBook implements CustomerDirectory {
 
     /**
-     * List of customers.
+     * List of customers, in the order they were added.
      **/
     private final List<Customer> customers;
 
+    /**
+     * Read-only view of customers.
+     */
+    private final List<Customer> customersView;
+
+    /**
+     * Customers indexed by their name and phone number.
+     */
+    private final Map<Key, Customer> byIdentity;
+
+    /**
+     * Customers indexed by their phone number. Most phone numbers belong to one customer, so
+     * their customer is held in an immutable single element list until a second one is added.
+     */
+    private final Map<Integer, List<Customer>> byPhone;
+
+    /**
+     * Customers indexed for searching by their lower case name, or null until first searched.
+     */
+    private CustomerTrie names;
+
+    /**
+     * Customers indexed for searching by the digits of their phone number,
+     * or null until first searched.
+     */
+    private CustomerTrie phones;
+
+    /**
+     * Keeps the indexes correct when a stored customer's name or phone number changes.
+     */
+    private final CustomerListener reindexer;
+
     /**
      * Create a new AddressBook instance.
      **/
     public AddressBook() {
+        this(null);
+    }
+
+    /**
+     * Create a new AddressBook whose indexes are only read and changed while holding the given
+     * monitor, so that edits made to stored customers are reindexed while holding it too.
+     * Without a monitor, customers are reindexed on the editing thread without any lock.
+     */
+    AddressBook(Object monitor) {
         this.customers = new ArrayList<>();
+        this.customersView = Collections.unmodifiableList(customers);
+        this.byIdentity = new HashMap<>();
+        this.byPhone = new HashMap<>();
+        if (monitor == null) {
+            this.reindexer = this::reindex;
+        } else {
+            this.reindexer = (customer, oldName, oldPhoneNumber) -> {
+                synchronized (monitor) {
+                    reindex(customer, oldName, oldPhoneNumber);
+                }
+            };
+        }
     }
 
     /**
      * Add a new customer to the address book.
      **/
+    @Override
     public void addCustomer(Customer customer) throws DuplicateCustomerException {
         // If customer already exists, throw exception message of Customers representation.
-        if (containsCustomer(customer)) {
+        Key key = new Key(customer.getName(), customer.getPhoneNumber());
+        if (byIdentity.putIfAbsent(key, customer) != null) {
             throw new DuplicateCustomerException("Duplicate customer: " + customer.toString());
         }
         customers.add(customer);
+        addToPhone(key.phoneNumber(), customer);
+        if (names != null) {
+            names.add(nameKey(key.name()), customer);
+            phones.add(Integer.toString(key.phoneNumber()), customer);
+        }
+        customer.addListener(reindexer);
     }
 
     /**
      * Check to see if a customer is already in the address book.
      **/
+    @Override
     public boolean containsCustomer(Customer customer) {
-        return customers.contains(customer);
+        return byIdentity.containsKey(new Key(customer.getName(), customer.getPhoneNumber()));
     }
 
     /**
      * Retrieve all customer records stored in the address book.
      **/
+    @Override
     public List<Customer> getAllRecords() {
         return new ArrayList<>(customers);
     }
 
+    /**
+     * Retrieve a read-only view of all customer records, in the order they were added.
+     * The view is not copied, so it reflects customers added later.
+     **/
+    @Override
+    public List<Customer> getRecordsView() {
+        return customersView;
+    }
+
+    /**
+     * Retrieve the number of customers stored in the address book.
+     **/
+    @Override
+    public int size() {
+        return customers.size();
+    }
+
+    /**
+     * Retrieve the customer at the given position, in the order customers were added.
+     **/
+    @Override
+    public Customer getRecord(int index) {
+        return customers.get(index);
+    }
+
     /**
      * Lookup a customer in address book, if they exist using their details.
      **/
+    @Override
     public Customer getCustomer(String name, int phoneNumber) throws CustomerNotFoundException {
-        // For each customer in (list) customers, return the customer with matching name & phone.
-        for (Customer customer : customers) {
-            if (customer.getName().equals(name) && customer.getPhoneNumber() == phoneNumber) {
-                return customer;
+        Customer customer = byIdentity.get(new Key(name, phoneNumber));
+        // Else return customer not found exception.
+        if (customer == null) {
+            throw new CustomerNotFoundException("Customer not found: " + name + ", " + phoneNumber);
+        }
+        return customer;
+    }
+
+    /**
+     * Retrieve every customer with the given phone number.
+     **/
+    @Override
+    public List<Customer> getCustomersByPhone(int phoneNumber) {
+        List<Customer> matches = byPhone.get(phoneNumber);
+        return matches == null ? new ArrayList<>() : new ArrayList<>(matches);
+    }
+
+    /**
+     * Finds up to limit customers whose name starts with the given prefix, ignoring case,
+     * in alphabetical order.
+     **/
+    @Override
+    public List<Customer> searchByName(String prefix, int limit) {
+        checkLimit(limit);
+        buildSearchIndexes();
+        return names.withPrefix(nameKey(prefix), limit);
+    }
+
+    /**
+     * Finds up to limit customers whose name is within maxEdits typing mistakes of the given
+     * name, ignoring case, where a mistake is a single character inserted, deleted or replaced.
+     * The closest matches come first.
+     **/
+    @Override
+    public List<Customer> searchBySimilarName(String name, int maxEdits, int limit) {
+        checkLimit(limit);
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("Number of edits cannot be negative.");
+        }
+        buildSearchIndexes();
+        return names.withinDistance(nameKey(name), maxEdits, limit);
+    }
+
+    /**
+     * Finds up to limit customers whose phone number starts with the digits of the given prefix,
+     * in order of their digits.
+     **/
+    @Override
+    public List<Customer> searchByPhone(int prefix, int limit) {
+        checkLimit(limit);
+        buildSearchIndexes();
+        return phones.withPrefix(Integer.toString(prefix), limit);
+    }
+
+    /**
+     * Moves a customer whose name or phone number changed to its new place in the indexes.
+     * If another customer already holds the new name and phone number, that customer stays
+     * indexed under them, and the edited customer takes their place once they move away.
+     */
+    private void reindex(Customer customer, String oldName, int oldPhoneNumber) {
+        Key oldKey = new Key(oldName, oldPhoneNumber);
+        boolean indexed = byIdentity.get(oldKey) == customer;
+        if (indexed) {
+            byIdentity.remove(oldKey);
+        }
+        byIdentity.putIfAbsent(new Key(customer.getName(), customer.getPhoneNumber()), customer);
+        if (names != null && !oldName.equals(customer.getName())) {
+            names.remove(nameKey(oldName), customer);
+            names.add(nameKey(customer.getName()), customer);
+        }
+        if (oldPhoneNumber != customer.getPhoneNumber()) {
+            removeFromPhone(oldPhoneNumber, customer);
+            addToPhone(customer.getPhoneNumber(), customer);
+            if (phones != null) {
+                phones.remove(Integer.toString(oldPhoneNumber), customer);
+                phones.add(Integer.toString(customer.getPhoneNumber()), customer);
             }
         }
-        // Else return customer not found exception.
-        throw new CustomerNotFoundException("Customer not found: " + name + ", " + phoneNumber);
+        if (indexed) {
+            reindexClashing(oldKey);
+        }
+    }
+
+    /**
+     * Indexes the oldest customer with the given name and phone number under them, if any
+     * remain. Such a customer was left out of the index when edited to clash with the one
+     * indexed there.
+     */
+    private void reindexClashing(Key key) {
+        List<Customer> held = byPhone.get(key.phoneNumber());
+        if (held == null) {
+            return;
+        }
+        for (Customer other : held) {
+            if (other.getName().equals(key.name())) {
+                byIdentity.put(key, other);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds a customer to the phone index.
+     */
+    private void addToPhone(int phoneNumber, Customer customer) {
+        List<Customer> held = byPhone.putIfAbsent(phoneNumber, List.of(customer));
+        if (held == null) {
+            return;
+        }
+        if (!(held instanceof ArrayList)) {
+            held = new ArrayList<>(held);
+            byPhone.put(phoneNumber, held);
+        }
+        held.add(customer);
+    }
+
+    /**
+     * Removes a customer from the phone index.
+     */
+    private void removeFromPhone(int phoneNumber, Customer customer) {
+        List<Customer> held = byPhone.get(phoneNumber);
+        if (held.size() == 1) {
+            byPhone.remove(phoneNumber);
+            return;
+        }
+        // Customers with equal details may share a phone number, so remove by identity.
+        held.removeIf(other -> other == customer);
+    }
+
+    /**
+     * Builds the search tries from every stored customer, if they have not been built yet.
+     */
+    private void buildSearchIndexes() {
+        if (names != null) {
+            return;
+        }
+        names = new CustomerTrie();
+        phones = new CustomerTrie();
+        for (Customer customer : customers) {
+            names.add(nameKey(customer.getName()), customer);
+            phones.add(Integer.toString(customer.getPhoneNumber()), customer);
+        }
+    }
+
+    /**
+     * Converts a name to the form it is searched by.
+     */
+    static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Ensures a search limit is not negative.
+     */
+    static void checkLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Search limit cannot be negative.");
+        }
+    }
+
+    /**
+     * The name and phone number identifying a customer, fixed when the key is made.
+     */
+    record Key(String name, int phoneNumber) {
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + phoneNumber;
+        }
     }
 }
@@ -0,0 +1,755 @@
+package farm.customer;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import farm.core.*;
+
+/**
+ * An address book storing its customers as columns rather than as Customer objects, for farms
+ * with far more customers on record than are served at once.
+ * <p>
+ * Each customer is a row of four ints: a phone number, the dictionary IDs of their name and
+ * address, and the next row with the same phone number. Names and addresses are each kept once
+ * in a dictionary, so an address shared by a household or a street costs only its ID. Rows are
+ * found through open-addressing tables of row numbers rather than maps of boxed keys.
+ * <p>
+ * Customer objects are only made when a customer is returned, and are held weakly so that a
+ * customer in use is always returned as the same object while unused ones cost nothing. Edits to
+ * a returned customer are written back to its row. Searches scan the columns rather than keeping
+ * tries over every customer, so they take longer than in an AddressBook, in exchange for using
+ * around a sixth of the memory per customer.
+ */
+public class ColumnarAddressBook implements CustomerDirectory {
+
+    /**
+     * Marks a customer without an address in the address column.
+     */
+    private static final int NO_ADDRESS = -1;
+
+    /**
+     * Marks the end of a chain of rows with the same phone number.
+     */
+    private static final int END = -1;
+
+    /**
+     * Every distinct name of a customer.
+     */
+    private final StringDictionary names;
+
+    /**
+     * Every distinct address of a customer.
+     */
+    private final StringDictionary addresses;
+
+    /**
+     * Phone number of each row.
+     */
+    private int[] phoneColumn;
+
+    /**
+     * Dictionary ID of the name of each row.
+     */
+    private int[] nameColumn;
+
+    /**
+     * Dictionary ID of the address of each row, or NO_ADDRESS.
+     */
+    private int[] addressColumn;
+
+    /**
+     * Next row with the same phone number as each row, or END.
+     */
+    private int[] nextWithPhone;
+
+    /**
+     * Number of rows, which is the number of customers.
+     */
+    private int rows;
+
+    /**
+     * Rows indexed by their name and phone number.
+     */
+    private final RowTable byIdentity;
+
+    /**
+     * First row with each phone number, indexed by the phone number.
+     */
+    private final RowTable byPhone;
+
+    /**
+     * Customers that have been returned and may still be in use, by row.
+     */
+    private final ReferenceTable materialised;
+
+    /**
+     * Customers that are no longer in use, to be removed from materialised.
+     */
+    private final ReferenceQueue<Customer> collected;
+
+    /**
+     * Read-only view of every row's customer, made as each is read.
+     */
+    private final List<Customer> recordsView;
+
+    /**
+     * Create a new, empty ColumnarAddressBook instance.
+     */
+    public ColumnarAddressBook() {
+        this.names = new StringDictionary();
+        this.addresses = new StringDictionary();
+        this.phoneColumn = new int[16];
+        this.nameColumn = new int[16];
+        this.addressColumn = new int[16];
+        this.nextWithPhone = new int[16];
+        this.byIdentity = new RowTable(row -> identityHash(nameColumn[row], phoneColumn[row]));
+        this.byPhone = new RowTable(row -> phoneHash(phoneColumn[row]));
+        this.materialised = new ReferenceTable();
+        this.collected = new ReferenceQueue<>();
+        this.recordsView = new RecordsView();
+    }
+
+    /**
+     * Add a new customer to the address book. The given customer is the one returned for the
+     * new row while it is in use, and edits to it are written back to the row.
+     */
+    @Override
+    public void addCustomer(Customer customer) throws DuplicateCustomerException {
+        int nameId = names.intern(customer.getName());
+        int phoneNumber = customer.getPhoneNumber();
+        if (findRow(nameId, phoneNumber) != END) {
+            throw new DuplicateCustomerException("Duplicate customer: " + customer.toString());
+        }
+        if (rows == phoneColumn.length) {
+            int capacity = rows * 2;
+            phoneColumn = Arrays.copyOf(phoneColumn, capacity);
+            nameColumn = Arrays.copyOf(nameColumn, capacity);
+            addressColumn = Arrays.copyOf(addressColumn, capacity);
+            nextWithPhone = Arrays.copyOf(nextWithPhone, capacity);
+        }
+        int row = rows++;
+        phoneColumn[row] = phoneNumber;
+        nameColumn[row] = nameId;
+        addressColumn[row] = addressId(customer.getAddress());
+        byIdentity.insert(row);
+        linkPhone(row);
+        track(row, customer);
+    }
+
+    /**
+     * Check to see if a customer is already in the address book.
+     **/
+    @Override
+    public boolean containsCustomer(Customer customer) {
+        int nameId = names.find(customer.getName());
+        return nameId >= 0 && findRow(nameId, customer.getPhoneNumber()) != END;
+    }
+
+    /**
+     * Retrieve all customer records stored in the address book.
+     **/
+    @Override
+    public List<Customer> getAllRecords() {
+        List<Customer> records = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            records.add(materialise(row));
+        }
+        return records;
+    }
+
+    /**
+     * Retrieve a read-only view of all customer records, in the order they were added.
+     * Each customer is only made when it is read from the view.
+     **/
+    @Override
+    public List<Customer> getRecordsView() {
+        return recordsView;
+    }
+
+    /**
+     * Retrieve the number of customers stored in the address book.
+     **/
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Retrieve the customer at the given position, in the order customers were added.
+     **/
+    @Override
+    public Customer getRecord(int index) {
+        Objects.checkIndex(index, rows);
+        return materialise(index);
+    }
+
+    /**
+     * Lookup a customer in address book, if they exist using their details.
+     **/
+    @Override
+    public Customer getCustomer(String name, int phoneNumber) throws CustomerNotFoundException {
+        int nameId = names.find(name);
+        int row = nameId < 0 ? END : findRow(nameId, phoneNumber);
+        if (row == END) {
+            throw new CustomerNotFoundException("Customer not found: " + name + ", " + phoneNumber);
+        }
+        return materialise(row);
+    }
+
+    /**
+     * Retrieve every customer with the given phone number.
+     **/
+    @Override
+    public List<Customer> getCustomersByPhone(int phoneNumber) {
+        List<Customer> matches = new ArrayList<>();
+        for (int row = firstWithPhone(phoneNumber); row != END; row = nextWithPhone[row]) {
+            matches.add(materialise(row));
+        }
+        return matches;
+    }
+
+    /**
+     * Finds up to limit customers whose name starts with the given prefix, ignoring case,
+     * in alphabetical order.
+     **/
+    @Override
+    public List<Customer> searchByName(String prefix, int limit) {
+        AddressBook.checkLimit(limit);
+        String key = AddressBook.nameKey(prefix);
+        // Decide once per distinct name, then pick out the rows holding a matching name.
+        String[] keys = new String[names.size()];
+        for (int id = 0; id < keys.length; id++) {
+            String candidate = AddressBook.nameKey(names.get(id));
+            if (candidate.startsWith(key)) {
+                keys[id] = candidate;
+            }
+        }
+        List<Match> matches = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            String candidate = keys[nameColumn[row]];
+            if (candidate != null) {
+                matches.add(new Match(row, 0, candidate));
+            }
+        }
+        return collect(matches, limit);
+    }
+
+    /**
+     * Finds up to limit customers whose name is within maxEdits typing mistakes of the given
+     * name, ignoring case, where a mistake is a single character inserted, deleted or replaced.
+     * The closest matches come first.
+     **/
+    @Override
+    public List<Customer> searchBySimilarName(String name, int maxEdits, int limit) {
+        AddressBook.checkLimit(limit);
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("Number of edits cannot be negative.");
+        }
+        String key = AddressBook.nameKey(name);
+        String[] keys = new String[names.size()];
+        int[] distances = new int[keys.length];
+        for (int id = 0; id < keys.length; id++) {
+            String candidate = AddressBook.nameKey(names.get(id));
+            distances[id] = distance(key, candidate, maxEdits);
+            if (distances[id] <= maxEdits) {
+                keys[id] = candidate;
+            }
+        }
+        List<Match> matches = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int id = nameColumn[row];
+            if (keys[id] != null) {
+                matches.add(new Match(row, distances[id], keys[id]));
+            }
+        }
+        return collect(matches, limit);
+    }
+
+    /**
+     * Finds up to limit customers whose phone number starts with the digits of the given prefix,
+     * in order of their digits.
+     **/
+    @Override
+    public List<Customer> searchByPhone(int prefix, int limit) {
+        AddressBook.checkLimit(limit);
+        String digits = Integer.toString(prefix);
+        List<Match> matches = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int phoneNumber = phoneColumn[row];
+            if (startsWith(phoneNumber, prefix, digits)) {
+                matches.add(new Match(row, 0, Integer.toString(phoneNumber)));
+            }
+        }
+        return collect(matches, limit);
+    }
+
+    /**
+     * Finds the row with the given name ID and phone number, or END if there is none.
+     */
+    private int findRow(int nameId, int phoneNumber) {
+        return byIdentity.find(identityHash(nameId, phoneNumber),
+                row -> nameColumn[row] == nameId && phoneColumn[row] == phoneNumber);
+    }
+
+    /**
+     * Finds the first row with the given phone number, or END if there is none.
+     */
+    private int firstWithPhone(int phoneNumber) {
+        return byPhone.find(phoneHash(phoneNumber), row -> phoneColumn[row] == phoneNumber);
+    }
+
+    /**
+     * Appends a row to the end of the chain of rows with its phone number.
+     */
+    private void linkPhone(int row) {
+        nextWithPhone[row] = END;
+        int first = firstWithPhone(phoneColumn[row]);
+        if (first == END) {
+            byPhone.insert(row);
+            return;
+        }
+        int last = first;
+        while (nextWithPhone[last] != END) {
+            last = nextWithPhone[last];
+        }
+        nextWithPhone[last] = row;
+    }
+
+    /**
+     * Removes a row from the chain of rows with its phone number.
+     */
+    private void unlinkPhone(int row) {
+        int first = firstWithPhone(phoneColumn[row]);
+        if (first == row) {
+            if (nextWithPhone[row] == END) {
+                byPhone.remove(row);
+            } else {
+                byPhone.replace(row, nextWithPhone[row]);
+            }
+            return;
+        }
+        int previous = first;
+        while (nextWithPhone[previous] != row) {
+            previous = nextWithPhone[previous];
+        }
+        nextWithPhone[previous] = nextWithPhone[row];
+    }
+
+    /**
+     * Writes a returned customer's new name or phone number back to its row, and moves the row
+     * to its new place in the indexes. If another customer already holds the new name and phone
+     * number, that customer stays indexed under them and the edited customer can only be found
+     * by phone number, until the other customer's details change.
+     */
+    private void rewrite(int row, Customer customer) {
+        boolean indexed = byIdentity.contains(row);
+        int oldNameId = nameColumn[row];
+        int oldPhoneNumber = phoneColumn[row];
+        byIdentity.remove(row);
+        int phoneNumber = customer.getPhoneNumber();
+        boolean phoneChanged = phoneColumn[row] != phoneNumber;
+        if (phoneChanged) {
+            unlinkPhone(row);
+        }
+        nameColumn[row] = names.intern(customer.getName());
+        phoneColumn[row] = phoneNumber;
+        if (findRow(nameColumn[row], phoneNumber) == END) {
+            byIdentity.insert(row);
+        }
+        if (phoneChanged) {
+            linkPhone(row);
+        }
+        if (indexed) {
+            reindexClashing(oldNameId, oldPhoneNumber);
+        }
+    }
+
+    /**
+     * Indexes the oldest row with the given name ID and phone number under them, if no row is.
+     * Such a row was left out of the index when edited to clash with the row indexed there.
+     */
+    private void reindexClashing(int nameId, int phoneNumber) {
+        if (findRow(nameId, phoneNumber) != END) {
+            return;
+        }
+        for (int row = firstWithPhone(phoneNumber); row != END; row = nextWithPhone[row]) {
+            if (nameColumn[row] == nameId) {
+                byIdentity.insert(row);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the customer for a row, making one if the row's customer is not in use.
+     */
+    private Customer materialise(int row) {
+        RowReference reference = materialised.get(row);
+        Customer customer = reference == null ? null : reference.get();
+        if (customer == null) {
+            int address = addressColumn[row];
+            customer = new Customer(names.get(nameColumn[row]), phoneColumn[row],
+                    address == NO_ADDRESS ? null : addresses.get(address));
+            track(row, customer);
+        }
+        return customer;
+    }
+
+    /**
+     * Remembers the customer returned for a row, and writes the customer's edits back to it.
+     */
+    private void track(int row, Customer customer) {
+        for (RowReference stale; (stale = (RowReference) collected.poll()) != null; ) {
+            materialised.remove(stale.row, stale);
+        }
+        materialised.put(row, new RowReference(customer, row, collected));
+        customer.addListener(new CustomerListener() {
+            @Override
+            public void identityChanged(Customer edited, String oldName, int oldPhoneNumber) {
+                rewrite(row, edited);
+            }
+
+            @Override
+            public void addressChanged(Customer edited, String oldAddress) {
+                addressColumn[row] = addressId(edited.getAddress());
+            }
+        });
+    }
+
+    /**
+     * Finds the dictionary ID of an address, adding it if needed, or NO_ADDRESS if it is null.
+     */
+    private int addressId(String address) {
+        return address == null ? NO_ADDRESS : addresses.intern(address);
+    }
+
+    /**
+     * Orders search matches by distance then key, keeping rows with equal keys in the order they
+     * were added, and returns the customers of the first limit of them.
+     */
+    private List<Customer> collect(List<Match> matches, int limit) {
+        matches.sort(Comparator.comparingInt(Match::distance)
+                .thenComparing(Match::key)
+                .thenComparingInt(Match::row));
+        List<Customer> results = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < limit && i < matches.size(); i++) {
+            results.add(materialise(matches.get(i).row()));
+        }
+        return results;
+    }
+
+    /**
+     * Determines whether the digits of a phone number start with the digits of a prefix.
+     */
+    private static boolean startsWith(int phoneNumber, int prefix, String digits) {
+        if (phoneNumber < 0 || prefix <= 0) {
+            return Integer.toString(phoneNumber).startsWith(digits);
+        }
+        // Drop trailing digits until the number is no longer than the prefix.
+        int leading = phoneNumber;
+        while (leading > prefix) {
+            leading /= 10;
+        }
+        return leading == prefix;
+    }
+
+    /**
+     * Computes the edit distance between two strings, or maxEdits + 1 once it is known to exceed
+     * maxEdits.
+     */
+    private static int distance(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return maxEdits + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int best = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int replace = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+                best = Math.min(best, current[j]);
+            }
+            if (best > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], maxEdits + 1);
+    }
+
+    /**
+     * Hashes a name ID and phone number into a position in the identity table.
+     */
+    private static int identityHash(int nameId, int phoneNumber) {
+        return StringDictionary.spread(31 * nameId + phoneNumber);
+    }
+
+    /**
+     * Hashes a phone number into a position in the phone table.
+     */
+    private static int phoneHash(int phoneNumber) {
+        return StringDictionary.spread(phoneNumber);
+    }
+
+    /**
+     * An open-addressing hash table of row numbers, hashed by the given function of the row.
+     * Removed rows are filled in by shifting later rows back, so no deleted markers build up.
+     */
+    private static final class RowTable {
+
+        /**
+         * Hash of the row in each slot.
+         */
+        private final IntUnaryOperator hash;
+
+        /**
+         * Row plus one in each slot, or 0 for an empty slot.
+         */
+        private int[] slots = new int[32];
+
+        /**
+         * Number of rows in the table.
+         */
+        private int size;
+
+        /**
+         * Creates an empty table of rows hashed by the given function.
+         */
+        private RowTable(IntUnaryOperator hash) {
+            this.hash = hash;
+        }
+
+        /**
+         * Finds the row with the given hash accepted by the given test, or END if there is none.
+         */
+        private int find(int rowHash, IntPredicate matches) {
+            int mask = slots.length - 1;
+            for (int i = rowHash & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (matches.test(slots[i] - 1)) {
+                    return slots[i] - 1;
+                }
+            }
+            return END;
+        }
+
+        /**
+         * Adds a row to the table.
+         */
+        private void insert(int row) {
+            int mask = slots.length - 1;
+            int i = hash.applyAsInt(row) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = row + 1;
+            // Keep the table at most half full so probe sequences stay short.
+            if (++size * 2 > slots.length) {
+                int[] old = slots;
+                slots = new int[old.length * 2];
+                size = 0;
+                for (int held : old) {
+                    if (held != 0) {
+                        insert(held - 1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Puts a row with the same hash in the place of a row in the table.
+         */
+        private void replace(int row, int replacement) {
+            int i = slotOf(row);
+            if (i >= 0) {
+                slots[i] = replacement + 1;
+            }
+        }
+
+        /**
+         * Removes a row from the table, if it is there.
+         */
+        private void remove(int row) {
+            int i = slotOf(row);
+            if (i < 0) {
+                return;
+            }
+            slots[i] = 0;
+            size--;
+            int mask = slots.length - 1;
+            for (int j = (i + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+                int home = hash.applyAsInt(slots[j] - 1) & mask;
+                // Move the row back into the gap unless its home lies after the gap.
+                if ((j - home & mask) >= (j - i & mask)) {
+                    slots[i] = slots[j];
+                    slots[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        /**
+         * Determines if a row is in the table.
+         */
+        private boolean contains(int row) {
+            return slotOf(row) >= 0;
+        }
+
+        /**
+         * Finds the slot holding a row, or -1 if the row is not in the table.
+         */
+        private int slotOf(int row) {
+            int mask = slots.length - 1;
+            for (int i = hash.applyAsInt(row) & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (slots[i] == row + 1) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * An open-addressing hash table from rows to the weakly held customers returned for them.
+     * Removed entries are filled in by shifting later entries back, as in a RowTable.
+     */
+    private static final class ReferenceTable {
+
+        /**
+         * Row plus one in each slot, or 0 for an empty slot.
+         */
+        private int[] keys = new int[16];
+
+        /**
+         * Reference held for the row in each slot.
+         */
+        private RowReference[] values = new RowReference[16];
+
+        /**
+         * Number of rows in the table.
+         */
+        private int size;
+
+        /**
+         * Retrieves the reference held for a row, or null if there is none.
+         */
+        private RowReference get(int row) {
+            int mask = keys.length - 1;
+            for (int i = StringDictionary.spread(row) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == row + 1) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Holds a reference for a row, replacing any held before.
+         */
+        private void put(int row, RowReference reference) {
+            int mask = keys.length - 1;
+            int i = StringDictionary.spread(row) & mask;
+            while (keys[i] != 0 && keys[i] != row + 1) {
+                i = (i + 1) & mask;
+            }
+            values[i] = reference;
+            if (keys[i] != 0) {
+                return;
+            }
+            keys[i] = row + 1;
+            // Keep the table at most half full so probe sequences stay short.
+            if (++size * 2 > keys.length) {
+                int[] oldKeys = keys;
+                RowReference[] oldValues = values;
+                keys = new int[oldKeys.length * 2];
+                values = new RowReference[oldKeys.length * 2];
+                size = 0;
+                for (int j = 0; j < oldKeys.length; j++) {
+                    if (oldKeys[j] != 0) {
+                        put(oldKeys[j] - 1, oldValues[j]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes a row's reference, if it is the one held for the row.
+         */
+        private void remove(int row, RowReference reference) {
+            int mask = keys.length - 1;
+            int i = StringDictionary.spread(row) & mask;
+            while (keys[i] != row + 1) {
+                if (keys[i] == 0) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            if (values[i] != reference) {
+                return;
+            }
+            keys[i] = 0;
+            values[i] = null;
+            size--;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = StringDictionary.spread(keys[j] - 1) & mask;
+                // Move the entry back into the gap unless its home lies after the gap.
+                if ((j - home & mask) >= (j - i & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    keys[j] = 0;
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+    }
+
+    /**
+     * A read-only list of the customers of every row, making each as it is read.
+     */
+    private final class RecordsView extends AbstractList<Customer> implements RandomAccess {
+        @Override
+        public Customer get(int index) {
+            return getRecord(index);
+        }
+
+        @Override
+        public int size() {
+            return rows;
+        }
+    }
+
+    /**
+     * A weakly held customer returned for a row.
+     */
+    private static final class RowReference extends WeakReference<Customer> {
+
+        /**
+         * The row the customer was made from.
+         */
+        private final int row;
+
+        /**
+         * Creates a weak reference to the customer of a row.
+         */
+        private RowReference(Customer customer, int row, ReferenceQueue<Customer> queue) {
+            super(customer, queue);
+            this.row = row;
+        }
+    }
+
+    /**
+     * A row matching a search, with its distance from the search key and its matched key.
+     */
+    private record Match(int row, int distance, String key) {
+    }
+}
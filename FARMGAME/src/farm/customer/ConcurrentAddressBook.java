@@ -0,0 +1,329 @@
+package farm.customer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import farm.core.*;
+
+/**
+ * An address book that may be read and written by many threads at once.
+ * <p>
+ * Customers are indexed in concurrent maps, so looking a customer up never takes a lock and
+ * tills are not held up while the back office registers and edits customers. When a stored
+ * customer's name or phone number changes, the customer is claimed under its new details before
+ * being released from its old ones, so a lookup by either set of details never misses it while
+ * the change is in progress. Searches share a read lock over the search tries, which is only held
+ * exclusively while a customer is added or edited; edits also re-key customers under it, so that
+ * a customer edited onto another's details is indexed once the other moves away.
+ */
+public class ConcurrentAddressBook implements CustomerDirectory {
+
+    /**
+     * Customers, in the order they were added, in the first count elements. Replaced by a
+     * larger copy when full, so an array read after count always holds that many customers.
+     */
+    private volatile Customer[] customers;
+
+    /**
+     * Number of customers stored. Raised after each customer is written to customers.
+     */
+    private volatile int count;
+
+    /**
+     * Held while a customer is appended to customers.
+     */
+    private final Object appendLock;
+
+    /**
+     * Customers indexed by their name and phone number.
+     */
+    private final ConcurrentMap<AddressBook.Key, Customer> byIdentity;
+
+    /**
+     * Customers indexed by their phone number.
+     */
+    private final ConcurrentMap<Integer, List<Customer>> byPhone;
+
+    /**
+     * Customers indexed for searching by their lower case name.
+     */
+    private final CustomerTrie names;
+
+    /**
+     * Customers indexed for searching by the digits of their phone number.
+     */
+    private final CustomerTrie phones;
+
+    /**
+     * Guards the search tries, which are not safe for concurrent modification.
+     */
+    private final ReadWriteLock searchLock;
+
+    /**
+     * Keeps the indexes correct when a stored customer's name or phone number changes.
+     */
+    private final CustomerListener reindexer;
+
+    /**
+     * Read-only view of customers.
+     */
+    private final List<Customer> recordsView;
+
+    /**
+     * Create a new, empty ConcurrentAddressBook instance.
+     */
+    public ConcurrentAddressBook() {
+        this.customers = new Customer[16];
+        this.count = 0;
+        this.appendLock = new Object();
+        this.byIdentity = new ConcurrentHashMap<>();
+        this.byPhone = new ConcurrentHashMap<>();
+        this.names = new CustomerTrie();
+        this.phones = new CustomerTrie();
+        this.searchLock = new ReentrantReadWriteLock();
+        this.reindexer = this::reindex;
+        this.recordsView = new RecordsView();
+    }
+
+    /**
+     * Add a new customer to the address book. If two threads add equal customers at once,
+     * exactly one of them succeeds.
+     */
+    @Override
+    public void addCustomer(Customer customer) throws DuplicateCustomerException {
+        // Hold the customer so that its details cannot change until it is fully indexed.
+        synchronized (customer) {
+            AddressBook.Key key = new AddressBook.Key(customer.getName(),
+                    customer.getPhoneNumber());
+            if (byIdentity.putIfAbsent(key, customer) != null) {
+                throw new DuplicateCustomerException("Duplicate customer: " + customer.toString());
+            }
+            append(customer);
+            addToPhone(key.phoneNumber(), customer);
+            searchLock.writeLock().lock();
+            try {
+                names.add(AddressBook.nameKey(key.name()), customer);
+                phones.add(Integer.toString(key.phoneNumber()), customer);
+            } finally {
+                searchLock.writeLock().unlock();
+            }
+            customer.addListener(reindexer);
+        }
+    }
+
+    /**
+     * Check to see if a customer is already in the address book.
+     */
+    @Override
+    public boolean containsCustomer(Customer customer) {
+        return byIdentity.containsKey(new AddressBook.Key(customer.getName(),
+                customer.getPhoneNumber()));
+    }
+
+    /**
+     * Retrieve all customer records stored in the address book, in the order they were added.
+     */
+    @Override
+    public List<Customer> getAllRecords() {
+        int size = count;
+        return new ArrayList<>(Arrays.asList(customers).subList(0, size));
+    }
+
+    /**
+     * Retrieve a read-only view of all customer records, in the order they were added. The view
+     * is not copied, and iterating it sees customers added while it is iterated.
+     */
+    @Override
+    public List<Customer> getRecordsView() {
+        return recordsView;
+    }
+
+    /**
+     * Retrieve the number of customers stored in the address book.
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Retrieve the customer at the given position, in the order customers were added.
+     */
+    @Override
+    public Customer getRecord(int index) {
+        Objects.checkIndex(index, count);
+        return customers[index];
+    }
+
+    /**
+     * Lookup a customer in address book, if they exist using their details.
+     */
+    @Override
+    public Customer getCustomer(String name, int phoneNumber) throws CustomerNotFoundException {
+        Customer customer = byIdentity.get(new AddressBook.Key(name, phoneNumber));
+        if (customer == null) {
+            throw new CustomerNotFoundException("Customer not found: " + name + ", " + phoneNumber);
+        }
+        return customer;
+    }
+
+    /**
+     * Retrieve every customer with the given phone number.
+     */
+    @Override
+    public List<Customer> getCustomersByPhone(int phoneNumber) {
+        List<Customer> matches = byPhone.get(phoneNumber);
+        return matches == null ? new ArrayList<>() : new ArrayList<>(matches);
+    }
+
+    /**
+     * Finds up to limit customers whose name starts with the given prefix, ignoring case,
+     * in alphabetical order.
+     */
+    @Override
+    public List<Customer> searchByName(String prefix, int limit) {
+        AddressBook.checkLimit(limit);
+        searchLock.readLock().lock();
+        try {
+            return names.withPrefix(AddressBook.nameKey(prefix), limit);
+        } finally {
+            searchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds up to limit customers whose name is within maxEdits typing mistakes of the given
+     * name, ignoring case. The closest matches come first.
+     */
+    @Override
+    public List<Customer> searchBySimilarName(String name, int maxEdits, int limit) {
+        AddressBook.checkLimit(limit);
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("Number of edits cannot be negative.");
+        }
+        searchLock.readLock().lock();
+        try {
+            return names.withinDistance(AddressBook.nameKey(name), maxEdits, limit);
+        } finally {
+            searchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds up to limit customers whose phone number starts with the digits of the given prefix,
+     * in order of their digits.
+     */
+    @Override
+    public List<Customer> searchByPhone(int prefix, int limit) {
+        AddressBook.checkLimit(limit);
+        searchLock.readLock().lock();
+        try {
+            return phones.withPrefix(Integer.toString(prefix), limit);
+        } finally {
+            searchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Re-keys a customer whose name or phone number changed, claiming the new details before
+     * releasing the old ones. If another customer already holds the new details, that customer
+     * keeps them, and the edited customer takes their place once they move away. Runs while the
+     * edited customer is held, and re-keys under the search lock so that edits which clash are
+     * applied one at a time.
+     */
+    private void reindex(Customer customer, String oldName, int oldPhoneNumber) {
+        AddressBook.Key oldKey = new AddressBook.Key(oldName, oldPhoneNumber);
+        AddressBook.Key newKey = new AddressBook.Key(customer.getName(), customer.getPhoneNumber());
+        searchLock.writeLock().lock();
+        try {
+            boolean indexed = byIdentity.get(oldKey) == customer;
+            byIdentity.putIfAbsent(newKey, customer);
+            byIdentity.computeIfPresent(oldKey, (key, held) -> held == customer ? null : held);
+            if (oldPhoneNumber != customer.getPhoneNumber()) {
+                addToPhone(customer.getPhoneNumber(), customer);
+                byPhone.computeIfPresent(oldPhoneNumber, (phone, held) -> {
+                    held.removeIf(other -> other == customer);
+                    return held.isEmpty() ? null : held;
+                });
+            }
+            if (indexed) {
+                reindexClashing(oldKey);
+            }
+            if (!oldName.equals(customer.getName())) {
+                names.remove(AddressBook.nameKey(oldName), customer);
+                names.add(AddressBook.nameKey(customer.getName()), customer);
+            }
+            if (oldPhoneNumber != customer.getPhoneNumber()) {
+                phones.remove(Integer.toString(oldPhoneNumber), customer);
+                phones.add(Integer.toString(customer.getPhoneNumber()), customer);
+            }
+        } finally {
+            searchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the oldest customer with the given name and phone number under them, if any
+     * remain. Such a customer was left out of the index when edited to clash with the one
+     * indexed there. Must be called under the search lock's write lock.
+     */
+    private void reindexClashing(AddressBook.Key key) {
+        List<Customer> held = byPhone.get(key.phoneNumber());
+        if (held == null) {
+            return;
+        }
+        for (Customer other : held) {
+            if (other.getName().equals(key.name())) {
+                byIdentity.putIfAbsent(key, other);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends a customer to the end of customers, growing it if full.
+     */
+    private void append(Customer customer) {
+        synchronized (appendLock) {
+            Customer[] current = customers;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                customers = current;
+            }
+            current[count] = customer;
+            // Raising the count publishes the customer to readers.
+            count++;
+        }
+    }
+
+    /**
+     * Adds a customer to the phone index, within the map's own update of that phone number so
+     * that it cannot race with the number's list being dropped.
+     */
+    private void addToPhone(int phoneNumber, Customer customer) {
+        byPhone.compute(phoneNumber, (phone, held) -> {
+            List<Customer> customersWithPhone = held == null ? new CopyOnWriteArrayList<>() : held;
+            customersWithPhone.add(customer);
+            return customersWithPhone;
+        });
+    }
+
+    /**
+     * A read-only list of the customers, reading the array they are held in directly.
+     */
+    private final class RecordsView extends AbstractList<Customer> implements RandomAccess {
+        @Override
+        public Customer get(int index) {
+            return getRecord(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -2,31 +2,47 @@ package farm.customer;
 
 import farm.sales.Cart;
 
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * A customer who interacts with the farmer's business.
  * Keeps a record of the customer's information.
+ * <p>
+ * Details may be read from any thread. Changes to a customer's name and phone number are made
+ * one at a time, so listeners see each change in the order it happened.
+ * <p>
+ * A customer only holds a cart of their own once they pick products before a transaction is
+ * started. Starting a transaction moves those products into the transaction's cart, and the
+ * customer holds no cart again until they next pick products.
  */
 public class Customer {
 
     /**
      * String name of Customer
      */
-    private String name;
+    private volatile String name;
 
     /**
      * Integer phone number of Customer.
      */
-    private int phoneNumber;
+    private volatile int phoneNumber;
 
     /**
      * String address of Customer.
      */
-    private String address;
+    private volatile String address;
+
+    /**
+     * Cart of products picked before a transaction was started, or null if there are none.
+     */
+    private volatile Cart cart;
 
     /**
-     * Cart of customer.
+     * Listeners told when the name or phone number of Customer changes, or null if none.
      */
-    private final Cart cart;
+    private volatile List<CustomerListener> listeners;
 
     /**
      * Create a new customer instance with their details.
@@ -35,7 +51,6 @@ public class Customer {
         this.name = name;
         this.phoneNumber = phoneNumber;
         this.address = address;
-        this.cart = new Cart();
     }
 
     /**
@@ -48,8 +63,12 @@ public class Customer {
     /**
      * Update the current name of the customer with a new one.
      */
-    public void setName(String newName) {
+    public synchronized void setName(String newName) {
+        String oldName = this.name;
         this.name = newName;
+        if (!oldName.equals(newName)) {
+            identityChanged(oldName, phoneNumber);
+        }
     }
 
     /**
@@ -62,8 +81,12 @@ public class Customer {
     /**
      * Set the current phone number of the customer to be newPhone.
      */
-    public void setPhoneNumber(int newPhone) {
+    public synchronized void setPhoneNumber(int newPhone) {
+        int oldPhone = this.phoneNumber;
         this.phoneNumber = newPhone;
+        if (oldPhone != newPhone) {
+            identityChanged(name, oldPhone);
+        }
     }
 
     /**
@@ -76,15 +99,46 @@ public class Customer {
     /**
      * Set the current address of the customer to be newAddress.
      */
-    public void setAddress(String newAddress) {
+    public synchronized void setAddress(String newAddress) {
+        String oldAddress = this.address;
         this.address = newAddress;
+        List<CustomerListener> current = listeners;
+        if (current != null && !Objects.equals(oldAddress, newAddress)) {
+            for (CustomerListener listener : current) {
+                listener.addressChanged(this, oldAddress);
+            }
+        }
     }
 
     /**
-     * Retrieves the customers cart.
+     * Retrieves the customers cart, making an empty one if they have none. Products added to it
+     * join the next transaction started for the customer.
      */
     public Cart getCart() {
-        return cart;
+        Cart current = cart;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (cart == null) {
+                cart = new Cart();
+            }
+            return cart;
+        }
+    }
+
+    /**
+     * Moves every product in the customer's cart into the given cart, leaving the customer
+     * without a cart.
+     */
+    public synchronized void moveCartInto(Cart target) {
+        if (cart == null) {
+            return;
+        }
+        for (int i = 0; i < cart.size(); i++) {
+            target.addProduct(cart.get(i));
+        }
+        cart = null;
     }
 
     /**
@@ -116,7 +170,41 @@ public class Customer {
     // Override default Object hashCode() method
     @Override
     public int hashCode() {
-        return name.hashCode() * Integer.hashCode(phoneNumber) * 17;
+        // Combine additively, as multiplying lets any zero phone number or name hash
+        // collapse the whole hash to zero.
+        return 31 * name.hashCode() + Integer.hashCode(phoneNumber);
+    }
+
+    /**
+     * Registers a listener to be told whenever the name or phone number of the customer changes.
+     */
+    synchronized void addListener(CustomerListener listener) {
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops telling the listener about changes to the name or phone number of the customer.
+     */
+    synchronized void removeListener(CustomerListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Tells every listener that the customer's name or phone number changed from the given values.
+     */
+    private void identityChanged(String oldName, int oldPhoneNumber) {
+        List<CustomerListener> current = listeners;
+        if (current == null) {
+            return;
+        }
+        for (CustomerListener listener : current) {
+            listener.identityChanged(this, oldName, oldPhoneNumber);
+        }
     }
 }
 
@@ -0,0 +1,258 @@
+package farm.customer;
+
+import farm.core.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Imports and exports customers as CSV files with a name, phone number and address per row.
+ * <p>
+ * Imports stream the file in chunks cut at line ends, parsing several chunks at once on the
+ * common fork/join pool while the customers of earlier chunks are added to the address book in
+ * file order. Only a bounded number of chunks are held at once, so memory use does not grow with
+ * the size of the file. Rows are added through the address book's own addCustomer, so a row
+ * repeating an existing customer or an earlier row is rejected just as a duplicate would be.
+ * <p>
+ * Fields may be quoted, with quotes inside doubled, but may not span lines. A first row of
+ * "name,phone,address" is taken as a header and skipped.
+ */
+public final class CustomerCsv {
+
+    /**
+     * The header row written by exports, and skipped by imports.
+     */
+    private static final String HEADER = "name,phone,address";
+
+    /**
+     * Number of bytes of the file read into each chunk.
+     */
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * CustomerCsv only exposes static methods and should not be instantiated.
+     */
+    private CustomerCsv() {
+    }
+
+    /**
+     * Adds every customer in the CSV file to the address book, returning a report of how many
+     * were added and which rows were rejected.
+     */
+    public static ImportReport importFrom(Path file, CustomerDirectory addressBook)
+            throws IOException {
+        ImportReport report = new ImportReport();
+        Deque<CompletableFuture<Chunk>> parsing = new ArrayDeque<>();
+        int window = ForkJoinPool.getCommonPoolParallelism() + 1;
+        long line = 1;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+            boolean first = true;
+            boolean end = false;
+            while (!end) {
+                end = channel.read(buffer) < 0;
+                int cut = end ? buffer.position() : lastLineEnd(buffer) + 1;
+                if (cut == 0 && !buffer.hasRemaining()) {
+                    // A single line fills the buffer, so read more of it before cutting.
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                    continue;
+                }
+                if (cut == 0) {
+                    continue;
+                }
+                byte[] bytes = Arrays.copyOf(buffer.array(), cut);
+                buffer.flip().position(cut);
+                buffer.compact();
+                boolean header = first;
+                parsing.add(CompletableFuture.supplyAsync(() -> parse(bytes, header)));
+                first = false;
+                while (parsing.size() >= window) {
+                    line = apply(join(parsing.poll()), line, addressBook, report);
+                }
+            }
+        }
+        while (!parsing.isEmpty()) {
+            line = apply(join(parsing.poll()), line, addressBook, report);
+        }
+        return report;
+    }
+
+    /**
+     * Writes every customer in the address book to the CSV file, replacing it if it exists.
+     */
+    public static void exportTo(CustomerDirectory addressBook, Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Customer customer : addressBook.getRecordsView()) {
+                writeField(writer, customer.getName());
+                writer.write(',');
+                writer.write(Integer.toString(customer.getPhoneNumber()));
+                writer.write(',');
+                writeField(writer, customer.getAddress() == null ? "" : customer.getAddress());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Adds the customers of a parsed chunk whose first line is the given line,
+     * returning the line following the chunk.
+     */
+    private static long apply(Chunk chunk, long firstLine, CustomerDirectory addressBook,
+                              ImportReport report) {
+        for (Row row : chunk.rows()) {
+            long line = firstLine + row.offset();
+            if (row.error() != null) {
+                report.recordError(line, row.error());
+                continue;
+            }
+            try {
+                addressBook.addCustomer(new Customer(row.name(), row.phoneNumber(),
+                        row.address()));
+                report.recordImported();
+            } catch (DuplicateCustomerException e) {
+                report.recordError(line, e.getMessage());
+            }
+        }
+        return firstLine + chunk.lines();
+    }
+
+    /**
+     * Parses every line of a chunk into a row, skipping blank lines and, for the first chunk of
+     * a file, a header line.
+     */
+    private static Chunk parse(byte[] bytes, boolean first) {
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        List<Row> rows = new ArrayList<>();
+        int lines = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            int stop = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            String line = text.substring(start, stop);
+            boolean header = first && lines == 0 && line.equalsIgnoreCase(HEADER);
+            if (!header && !line.isBlank()) {
+                rows.add(parseRow(line, lines));
+            }
+            lines++;
+            start = end + 1;
+        }
+        return new Chunk(rows, lines);
+    }
+
+    /**
+     * Parses a single line into a row, or a row describing why it could not be parsed.
+     */
+    private static Row parseRow(String line, int offset) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        if (quoted) {
+            return Row.error(offset, "Unterminated quoted field.");
+        }
+        if (fields.size() != 3) {
+            return Row.error(offset, "Expected 3 fields but found " + fields.size() + ".");
+        }
+        String name = fields.get(0).strip();
+        if (name.isEmpty()) {
+            return Row.error(offset, "Customer name is empty.");
+        }
+        try {
+            int phoneNumber = Integer.parseInt(fields.get(1).strip());
+            return new Row(offset, name, phoneNumber, fields.get(2).strip(), null);
+        } catch (NumberFormatException e) {
+            return Row.error(offset, "Invalid phone number: " + fields.get(1).strip());
+        }
+    }
+
+    /**
+     * Writes a field, quoting it if it contains a separator or quote.
+     */
+    private static void writeField(BufferedWriter writer, String field) throws IOException {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        writer.write(field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Finds the position of the last line end read into the buffer, or -1 if there is none.
+     */
+    private static int lastLineEnd(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        for (int i = buffer.position() - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Waits for a chunk to be parsed, rethrowing anything that went wrong while parsing it.
+     */
+    private static Chunk join(CompletableFuture<Chunk> parsing) {
+        try {
+            return parsing.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The rows parsed from a chunk, and the number of lines the chunk spans.
+     */
+    private record Chunk(List<Row> rows, int lines) {
+    }
+
+    /**
+     * A parsed row, at the given line offset within its chunk, holding either a customer's
+     * details or why they could not be read.
+     */
+    private record Row(int offset, String name, int phoneNumber, String address, String error) {
+        private static Row error(int offset, String error) {
+            return new Row(offset, null, 0, null, error);
+        }
+    }
+}
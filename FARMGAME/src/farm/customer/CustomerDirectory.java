@@ -0,0 +1,74 @@
+package farm.customer;
+
+import java.util.List;
+
+import farm.core.*;
+
+/**
+ * A store of the customers that visit the Farm, which can look them up by their details and
+ * search them by name and phone number.
+ * <p>
+ * AddressBook is the standard implementation; others trade it off against concurrency,
+ * durability or memory use.
+ */
+public interface CustomerDirectory {
+
+    /**
+     * Add a new customer to the directory.
+     **/
+    void addCustomer(Customer customer) throws DuplicateCustomerException;
+
+    /**
+     * Check to see if a customer is already in the directory.
+     **/
+    boolean containsCustomer(Customer customer);
+
+    /**
+     * Retrieve all customer records stored in the directory.
+     **/
+    List<Customer> getAllRecords();
+
+    /**
+     * Retrieve a read-only view of all customer records, in the order they were added.
+     **/
+    List<Customer> getRecordsView();
+
+    /**
+     * Retrieve the number of customers stored in the directory.
+     **/
+    int size();
+
+    /**
+     * Retrieve the customer at the given position, in the order customers were added.
+     **/
+    Customer getRecord(int index);
+
+    /**
+     * Lookup a customer in the directory, if they exist using their details.
+     **/
+    Customer getCustomer(String name, int phoneNumber) throws CustomerNotFoundException;
+
+    /**
+     * Retrieve every customer with the given phone number.
+     **/
+    List<Customer> getCustomersByPhone(int phoneNumber);
+
+    /**
+     * Finds up to limit customers whose name starts with the given prefix, ignoring case,
+     * in alphabetical order.
+     **/
+    List<Customer> searchByName(String prefix, int limit);
+
+    /**
+     * Finds up to limit customers whose name is within maxEdits typing mistakes of the given
+     * name, ignoring case, where a mistake is a single character inserted, deleted or replaced.
+     * The closest matches come first.
+     **/
+    List<Customer> searchBySimilarName(String name, int maxEdits, int limit);
+
+    /**
+     * Finds up to limit customers whose phone number starts with the digits of the given prefix,
+     * in order of their digits.
+     **/
+    List<Customer> searchByPhone(int prefix, int limit);
+}
@@ -0,0 +1,21 @@
+package farm.customer;
+
+/**
+ * Notified when the details that identify a customer, their name and phone number, change.
+ * Allows indexes of customers to stay correct while customers are edited. Listeners that also
+ * need to know of other edits, such as those recording customers, may override addressChanged.
+ */
+@FunctionalInterface
+public interface CustomerListener {
+
+    /**
+     * Called after the customer's name or phone number has changed from the given old values.
+     */
+    void identityChanged(Customer customer, String oldName, int oldPhoneNumber);
+
+    /**
+     * Called after the customer's address has changed from the given old address.
+     */
+    default void addressChanged(Customer customer, String oldAddress) {
+    }
+}
@@ -0,0 +1,202 @@
+package farm.customer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A trie of customers keyed by a string, such as their name or phone number, supporting prefix
+ * search and search within a bounded edit distance.
+ * <p>
+ * Children of each node are kept in sorted arrays, so results come back in key order and prefix
+ * searches stop as soon as enough customers are found. Fuzzy searches walk the trie computing
+ * one row of the edit distance table per node, abandoning any branch whose row already exceeds
+ * the bound, so only the small part of the trie near the search key is visited.
+ */
+final class CustomerTrie {
+
+    /**
+     * The node for the empty key.
+     */
+    private final Node root = new Node();
+
+    /**
+     * Stores the customer under the given key.
+     */
+    void add(String key, Customer customer) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        if (node.customers == null) {
+            node.customers = new ArrayList<>(1);
+        }
+        node.customers.add(customer);
+    }
+
+    /**
+     * Removes the customer stored under the given key, along with any nodes left empty.
+     */
+    void remove(String key, Customer customer) {
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        Node end = path[key.length()];
+        if (end.customers == null) {
+            return;
+        }
+        // Customers with equal details may share a key, so remove by identity.
+        end.customers.removeIf(other -> other == customer);
+        if (end.customers.isEmpty()) {
+            end.customers = null;
+        }
+        for (int i = key.length(); i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].removeChild(key.charAt(i - 1));
+        }
+    }
+
+    /**
+     * Finds up to limit customers whose key starts with the given prefix, in key order.
+     */
+    List<Customer> withPrefix(String prefix, int limit) {
+        List<Customer> matches = new ArrayList<>(Math.min(limit, 16));
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        if (node != null) {
+            collect(node, matches, limit);
+        }
+        return matches;
+    }
+
+    /**
+     * Finds up to limit customers whose key is within maxEdits insertions, deletions or
+     * substitutions of the given key, closest first and then in key order.
+     */
+    List<Customer> withinDistance(String key, int maxEdits, int limit) {
+        List<Match> found = new ArrayList<>();
+        int[] first = new int[key.length() + 1];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = i;
+        }
+        if (key.length() <= maxEdits && root.customers != null) {
+            for (Customer customer : root.customers) {
+                found.add(new Match(customer, key.length()));
+            }
+        }
+        for (int c = 0; c < root.childCount; c++) {
+            search(root.children[c], root.keys[c], key, first, maxEdits, found);
+        }
+        // The sort is stable, so matches at the same distance stay in key order.
+        found.sort(Comparator.comparingInt(Match::distance));
+        List<Customer> matches = new ArrayList<>(Math.min(limit, found.size()));
+        for (int i = 0; i < found.size() && matches.size() < limit; i++) {
+            matches.add(found.get(i).customer());
+        }
+        return matches;
+    }
+
+    /**
+     * Adds customers under the node to matches in key order, until limit are found.
+     */
+    private static void collect(Node node, List<Customer> matches, int limit) {
+        if (node.customers != null) {
+            for (int i = 0; i < node.customers.size() && matches.size() < limit; i++) {
+                matches.add(node.customers.get(i));
+            }
+        }
+        for (int c = 0; c < node.childCount && matches.size() < limit; c++) {
+            collect(node.children[c], matches, limit);
+        }
+    }
+
+    /**
+     * Computes the edit distance row for the node reached by character c, recording the node's
+     * customers if they are close enough and descending while any prefix remains close enough.
+     */
+    private static void search(Node node, char c, String key, int[] previous, int maxEdits,
+                               List<Match> found) {
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        int closest = row[0];
+        for (int i = 1; i < row.length; i++) {
+            int substitution = previous[i - 1] + (key.charAt(i - 1) == c ? 0 : 1);
+            row[i] = Math.min(substitution, Math.min(row[i - 1], previous[i]) + 1);
+            closest = Math.min(closest, row[i]);
+        }
+        int distance = row[row.length - 1];
+        if (distance <= maxEdits && node.customers != null) {
+            for (Customer customer : node.customers) {
+                found.add(new Match(customer, distance));
+            }
+        }
+        if (closest <= maxEdits) {
+            for (int i = 0; i < node.childCount; i++) {
+                search(node.children[i], node.keys[i], key, row, maxEdits, found);
+            }
+        }
+    }
+
+    /**
+     * A customer found by a fuzzy search, with the edit distance of their key.
+     */
+    private record Match(Customer customer, int distance) {
+    }
+
+    /**
+     * A node of the trie, with its children kept sorted by the character leading to them.
+     */
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int childCount;
+        private List<Customer> customers;
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(keys, 0, childCount, c);
+            return i < 0 ? null : children[i];
+        }
+
+        private Node childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, 0, childCount, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, at, keys, at + 1, childCount - at);
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            Node child = new Node();
+            keys[at] = c;
+            children[at] = child;
+            childCount++;
+            return child;
+        }
+
+        private void removeChild(char c) {
+            int i = Arrays.binarySearch(keys, 0, childCount, c);
+            if (i < 0) {
+                return;
+            }
+            System.arraycopy(keys, i + 1, keys, i, childCount - i - 1);
+            System.arraycopy(children, i + 1, children, i, childCount - i - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+
+        private boolean isEmpty() {
+            return customers == null && childCount == 0;
+        }
+    }
+}
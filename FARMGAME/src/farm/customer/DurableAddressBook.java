@@ -0,0 +1,799 @@
+package farm.customer;
+
+import farm.core.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An address book whose customers survive restarts, by recording every added and edited customer
+ * in an append-only log and compacting the log into a snapshot in the background.
+ * <p>
+ * Both files hold length-prefixed binary records. Opening a durable address book only maps the
+ * snapshot and the log written since into memory; customers are decoded and indexed the first
+ * time the address book is used, and the search tries not until the first search. Log records
+ * are written and forced to disk in groups, so an edit may be lost if the process dies within one
+ * commit interval of making it. If writing the log fails, its records are kept pending and
+ * retried, and the failure is thrown by the next call to sync or close.
+ * <p>
+ * Compaction copies the customers' details, writes them to a new snapshot without blocking the
+ * address book, and only then starts a fresh log holding whatever was logged in the meantime.
+ * The snapshot records the log generation and position it covers, so a crash at any point leaves
+ * a snapshot and log that recover every committed change exactly once.
+ * <p>
+ * All methods are synchronized, so a background thread can commit and compact the log safely.
+ * Stored customers may be edited from any thread, as their edits are reindexed and logged while
+ * holding the address book's lock. A durable address book must be closed to commit the final
+ * group of changes.
+ */
+public class DurableAddressBook implements CustomerDirectory, Closeable {
+
+    /**
+     * Name of the change log file within the storage directory.
+     */
+    private static final String LOG_FILE = "customers.log";
+
+    /**
+     * Name of the snapshot file within the storage directory.
+     */
+    private static final String SNAPSHOT_FILE = "customers.snapshot";
+
+    /**
+     * Identifies the address book's log and snapshot files.
+     */
+    private static final int MAGIC = 0x46435553;
+
+    /**
+     * Size of the log file header: magic number then generation.
+     */
+    private static final int LOG_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    /**
+     * Size of the snapshot file header: magic number, log generation and position covered,
+     * then number of customers.
+     */
+    private static final int SNAPSHOT_HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES * 2;
+
+    /**
+     * Operation code of a log record adding a customer.
+     */
+    private static final byte ADD = 1;
+
+    /**
+     * Operation code of a log record changing a customer's name.
+     */
+    private static final byte NAME = 2;
+
+    /**
+     * Operation code of a log record changing a customer's phone number.
+     */
+    private static final byte PHONE = 3;
+
+    /**
+     * Operation code of a log record changing a customer's address.
+     */
+    private static final byte ADDRESS = 4;
+
+    /**
+     * Number of bytes of records written and forced to disk together.
+     */
+    private static final int GROUP_BYTES = 64 * 1024;
+
+    /**
+     * Longest a record waits before its group is written and forced to disk, in milliseconds.
+     */
+    private static final long COMMIT_INTERVAL_MILLIS = 50;
+
+    /**
+     * Number of bytes the log may grow to before it is compacted into a snapshot.
+     */
+    private static final long COMPACT_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Directory holding the log and snapshot files.
+     */
+    private final Path directory;
+
+    /**
+     * Records waiting to be written to the log as part of the next group. Holds a single group,
+     * unless a record is larger than a group or writes have failed and are waiting to be retried.
+     */
+    private ByteBuffer pending;
+
+    /**
+     * Stored customers, indexed and searched in memory.
+     */
+    private final AddressBook book;
+
+    /**
+     * Every stored customer, indexed by the ID their log records refer to them by.
+     */
+    private final List<Customer> customersById;
+
+    /**
+     * ID of every stored customer.
+     */
+    private final Map<Customer, Integer> ids;
+
+    /**
+     * Logs edits made to stored customers.
+     */
+    private final CustomerListener recorder;
+
+    /**
+     * Read-only view of customers, reading each under the address book's lock.
+     */
+    private final List<Customer> recordsView;
+
+    /**
+     * Commits pending records and compacts the log in the background.
+     */
+    private final ScheduledExecutorService committer;
+
+    /**
+     * Held for the whole of a compaction, so that only one runs at a time.
+     */
+    private final Object compaction;
+
+    /**
+     * Channel the log is appended through.
+     */
+    private FileChannel log;
+
+    /**
+     * The first failure to write the log since it was last thrown, or null if there is none.
+     */
+    private IOException failure;
+
+    /**
+     * Whether records have been written to the log since it was last forced to disk.
+     */
+    private boolean unforced;
+
+    /**
+     * Generation of the current log.
+     */
+    private long generation;
+
+    /**
+     * Mapped snapshot records not yet decoded, or null once the customers are loaded.
+     */
+    private ByteBuffer snapshotRecords;
+
+    /**
+     * Mapped log records not yet replayed, or null once the customers are loaded.
+     */
+    private ByteBuffer logRecords;
+
+    /**
+     * Whether the address book has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a durable address book over mapped records that are yet to be loaded.
+     */
+    private DurableAddressBook(Path directory, FileChannel log, long generation,
+                               ByteBuffer snapshotRecords, ByteBuffer logRecords) {
+        this.directory = directory;
+        this.log = log;
+        this.generation = generation;
+        this.snapshotRecords = snapshotRecords;
+        this.logRecords = logRecords;
+        this.pending = ByteBuffer.allocateDirect(GROUP_BYTES);
+        this.book = new AddressBook(this);
+        this.customersById = new ArrayList<>();
+        this.ids = new IdentityHashMap<>();
+        this.recorder = new Recorder();
+        this.recordsView = new RecordsView();
+        this.compaction = new Object();
+        this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "address-book-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commitInBackground, COMMIT_INTERVAL_MILLIS,
+                COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the durable address book stored in the given directory, creating it if it does not
+     * exist. The latest snapshot and the log written since are mapped, but not read until the
+     * address book is first used.
+     */
+    public static DurableAddressBook open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ByteBuffer snapshot = null;
+        long snapshotGeneration = 0;
+        long snapshotPosition = 0;
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotFile)) {
+            // A mapping stays valid once its channel is closed.
+            try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (snapshot.remaining() < SNAPSHOT_HEADER_BYTES || snapshot.getInt() != MAGIC) {
+                throw new IOException("Not an address book snapshot: " + snapshotFile);
+            }
+            snapshotGeneration = snapshot.getLong();
+            snapshotPosition = snapshot.getLong();
+            snapshot.getInt();
+        }
+
+        FileChannel log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long generation = snapshotGeneration + 1;
+        ByteBuffer changes = null;
+        if (log.size() >= LOG_HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            readFully(log, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an address book log: " + directory.resolve(LOG_FILE));
+            }
+            long logGeneration = header.getLong();
+            // The snapshot covers this log up to a position, or none of a newer log.
+            long start = logGeneration == snapshotGeneration ? snapshotPosition
+                    : logGeneration > snapshotGeneration ? LOG_HEADER_BYTES : -1;
+            if (start >= 0 && start <= log.size()) {
+                changes = log.map(FileChannel.MapMode.READ_ONLY, start, log.size() - start);
+                int complete = completeRecords(changes);
+                changes.limit(complete);
+                // Drop any partly written record left at the end of the log by a crash.
+                log.truncate(start + complete);
+                generation = logGeneration;
+            }
+        }
+        if (changes == null) {
+            startLog(log, generation);
+        }
+        log.position(log.size());
+        return new DurableAddressBook(directory, log, generation, snapshot, changes);
+    }
+
+    /**
+     * Add a new customer to the address book and record them in the log.
+     */
+    @Override
+    public synchronized void addCustomer(Customer customer) throws DuplicateCustomerException {
+        checkOpen();
+        load();
+        book.addCustomer(customer);
+        int id = store(customer);
+        customer.addListener(recorder);
+        String address = customer.getAddress() == null ? "" : customer.getAddress();
+        append(record(ADD, id, customer.getPhoneNumber(), customer.getName(), address));
+    }
+
+    /**
+     * Check to see if a customer is already in the address book.
+     */
+    @Override
+    public synchronized boolean containsCustomer(Customer customer) {
+        load();
+        return book.containsCustomer(customer);
+    }
+
+    /**
+     * Retrieve all customer records stored in the address book.
+     */
+    @Override
+    public synchronized List<Customer> getAllRecords() {
+        load();
+        return book.getAllRecords();
+    }
+
+    /**
+     * Retrieve a read-only view of all customer records, in the order they were added.
+     * The view is not copied, and each read from it is synchronized with the address book,
+     * so it may be read while other threads add customers.
+     */
+    @Override
+    public List<Customer> getRecordsView() {
+        return recordsView;
+    }
+
+    /**
+     * Retrieve the number of customers stored in the address book.
+     */
+    @Override
+    public synchronized int size() {
+        load();
+        return book.size();
+    }
+
+    /**
+     * Retrieve the customer at the given position, in the order customers were added.
+     */
+    @Override
+    public synchronized Customer getRecord(int index) {
+        load();
+        return book.getRecord(index);
+    }
+
+    /**
+     * Lookup a customer in address book, if they exist using their details.
+     */
+    @Override
+    public synchronized Customer getCustomer(String name, int phoneNumber)
+            throws CustomerNotFoundException {
+        load();
+        return book.getCustomer(name, phoneNumber);
+    }
+
+    /**
+     * Retrieve every customer with the given phone number.
+     */
+    @Override
+    public synchronized List<Customer> getCustomersByPhone(int phoneNumber) {
+        load();
+        return book.getCustomersByPhone(phoneNumber);
+    }
+
+    /**
+     * Finds up to limit customers whose name starts with the given prefix, ignoring case,
+     * in alphabetical order.
+     */
+    @Override
+    public synchronized List<Customer> searchByName(String prefix, int limit) {
+        load();
+        return book.searchByName(prefix, limit);
+    }
+
+    /**
+     * Finds up to limit customers whose name is within maxEdits typing mistakes of the given
+     * name, ignoring case. The closest matches come first.
+     */
+    @Override
+    public synchronized List<Customer> searchBySimilarName(String name, int maxEdits, int limit) {
+        load();
+        return book.searchBySimilarName(name, maxEdits, limit);
+    }
+
+    /**
+     * Finds up to limit customers whose phone number starts with the digits of the given prefix,
+     * in order of their digits.
+     */
+    @Override
+    public synchronized List<Customer> searchByPhone(int prefix, int limit) {
+        load();
+        return book.searchByPhone(prefix, limit);
+    }
+
+    /**
+     * Writes every pending record to the log and forces it to disk. Also throws the first
+     * failure to write the log since the last call, once its records have been retried.
+     */
+    public synchronized void sync() throws IOException {
+        IOException earlier = failure;
+        failure = null;
+        try {
+            flush();
+        } catch (IOException e) {
+            if (earlier != null) {
+                e.addSuppressed(earlier);
+            }
+            throw e;
+        }
+        if (earlier != null) {
+            throw earlier;
+        }
+    }
+
+    /**
+     * Writes every pending record to the log and forces it to disk.
+     */
+    private void flush() throws IOException {
+        if (pending.position() == 0 && !unforced) {
+            return;
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                log.write(pending);
+                unforced = true;
+            }
+        } finally {
+            // Keep anything a failed write left behind, ready to be resent.
+            pending.compact();
+        }
+        log.force(false);
+        unforced = false;
+    }
+
+    /**
+     * Writes a snapshot of every customer and starts a new log holding only the records logged
+     * while the snapshot was being written. The address book stays usable throughout, except
+     * while the copy of the customers is taken and while the new log is swapped in.
+     */
+    public void compact() throws IOException {
+        synchronized (compaction) {
+            long coveredGeneration;
+            long coveredPosition;
+            String[] names;
+            String[] addresses;
+            int[] phoneNumbers;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                load();
+                flush();
+                coveredGeneration = generation;
+                coveredPosition = log.position();
+                int count = customersById.size();
+                names = new String[count];
+                addresses = new String[count];
+                phoneNumbers = new int[count];
+                for (int id = 0; id < count; id++) {
+                    Customer customer = customersById.get(id);
+                    names[id] = customer.getName();
+                    addresses[id] = customer.getAddress() == null ? "" : customer.getAddress();
+                    phoneNumbers[id] = customer.getPhoneNumber();
+                }
+            }
+            writeSnapshot(coveredGeneration, coveredPosition, names, addresses, phoneNumbers);
+            synchronized (this) {
+                if (!closed) {
+                    rotateLog(coveredPosition);
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits the final group of changes and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        committer.shutdown();
+        synchronized (compaction) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    sync();
+                } finally {
+                    log.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the mapped snapshot and replays the mapped log, if not yet done.
+     */
+    private void load() {
+        if (snapshotRecords == null && logRecords == null) {
+            return;
+        }
+        try {
+            if (snapshotRecords != null) {
+                while (snapshotRecords.hasRemaining()) {
+                    snapshotRecords.getInt();
+                    int phoneNumber = snapshotRecords.getInt();
+                    String name = getString(snapshotRecords);
+                    String address = getString(snapshotRecords);
+                    Customer customer = new Customer(name, phoneNumber, address);
+                    book.addCustomer(customer);
+                    store(customer);
+                }
+            }
+            if (logRecords != null) {
+                while (logRecords.hasRemaining()) {
+                    replay(logRecords);
+                }
+            }
+        } catch (DuplicateCustomerException e) {
+            throw new IllegalStateException("Address book files hold duplicate customers.", e);
+        }
+        snapshotRecords = null;
+        logRecords = null;
+        for (Customer customer : customersById) {
+            customer.addListener(recorder);
+        }
+    }
+
+    /**
+     * Applies a single log record to the loaded customers.
+     */
+    private void replay(ByteBuffer records) throws DuplicateCustomerException {
+        records.getInt();
+        byte operation = records.get();
+        int id = records.getInt();
+        switch (operation) {
+            case ADD -> {
+                int phoneNumber = records.getInt();
+                String name = getString(records);
+                Customer customer = new Customer(name, phoneNumber, getString(records));
+                book.addCustomer(customer);
+                store(customer);
+            }
+            case NAME -> customersById.get(id).setName(getString(records));
+            case PHONE -> customersById.get(id).setPhoneNumber(records.getInt());
+            case ADDRESS -> customersById.get(id).setAddress(getString(records));
+            default -> throw new IllegalStateException("Unknown address book log record.");
+        }
+    }
+
+    /**
+     * Gives a newly stored customer the next ID, returning it.
+     */
+    private int store(Customer customer) {
+        int id = customersById.size();
+        customersById.add(customer);
+        ids.put(customer, id);
+        return id;
+    }
+
+    /**
+     * Encodes a log record: its length, operation and customer ID, then an optional phone number
+     * followed by any number of strings.
+     */
+    private static ByteBuffer record(byte operation, int id, Integer phoneNumber,
+                                     String... strings) {
+        byte[][] encoded = new byte[strings.length][];
+        int length = 1 + Integer.BYTES + (phoneNumber == null ? 0 : Integer.BYTES);
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            length += Integer.BYTES + encoded[i].length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length);
+        record.putInt(length).put(operation).putInt(id);
+        if (phoneNumber != null) {
+            record.putInt(phoneNumber);
+        }
+        for (byte[] bytes : encoded) {
+            record.putInt(bytes.length).put(bytes);
+        }
+        return record.flip();
+    }
+
+    /**
+     * Throws if the address book has been closed, before any customer is added to it.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Durable address book has been closed.");
+        }
+    }
+
+    /**
+     * Appends a record to the pending group, writing the group out first if it would overflow.
+     * A record is never dropped, as the change it records has already been made; a failed write
+     * keeps it pending.
+     */
+    private void append(ByteBuffer record) {
+        if (record.remaining() > pending.remaining()) {
+            try {
+                flush();
+            } catch (IOException e) {
+                remember(e);
+            }
+        }
+        if (record.remaining() > pending.remaining()) {
+            int capacity = Math.max(pending.capacity() * 2,
+                    pending.position() + record.remaining());
+            pending.flip();
+            pending = ByteBuffer.allocateDirect(capacity).put(pending);
+        }
+        pending.put(record);
+    }
+
+    /**
+     * Keeps a failure to write the log until the next call to sync or close throws it.
+     */
+    private void remember(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Commits pending records and compacts the log when it has grown too large.
+     * Run periodically on the committer thread.
+     */
+    private void commitInBackground() {
+        try {
+            boolean compact;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                flush();
+                compact = log.size() >= COMPACT_BYTES;
+            }
+            if (compact) {
+                compact();
+            }
+        } catch (IOException e) {
+            // Leave the records pending; the next commit or close will retry them.
+            synchronized (this) {
+                remember(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the given customers to a new snapshot covering the log up to the given position,
+     * moving it into place once complete.
+     */
+    private void writeSnapshot(long coveredGeneration, long coveredPosition, String[] names,
+                               String[] addresses, int[] phoneNumbers) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(GROUP_BYTES);
+            buffer.putInt(MAGIC).putLong(coveredGeneration).putLong(coveredPosition)
+                    .putInt(names.length);
+            for (int id = 0; id < names.length; id++) {
+                byte[] name = names[id].getBytes(StandardCharsets.UTF_8);
+                byte[] address = addresses[id].getBytes(StandardCharsets.UTF_8);
+                int length = Integer.BYTES * 3 + name.length + address.length;
+                if (Integer.BYTES + length > buffer.remaining()) {
+                    writeFully(channel, buffer.flip());
+                    buffer.clear();
+                }
+                if (Integer.BYTES + length > buffer.capacity()) {
+                    buffer = ByteBuffer.allocateDirect(Integer.BYTES + length);
+                }
+                buffer.putInt(length).putInt(phoneNumbers[id]);
+                buffer.putInt(name.length).put(name).putInt(address.length).put(address);
+            }
+            writeFully(channel, buffer.flip());
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Replaces the log with one of the next generation, holding only the records logged after
+     * the given position. Until the new log is moved into place, the old log and the snapshot
+     * covering it up to that position still recover every change.
+     */
+    private void rotateLog(long coveredPosition) throws IOException {
+        flush();
+        ByteBuffer tail = ByteBuffer.allocate((int) (log.position() - coveredPosition));
+        readFully(log, tail, coveredPosition);
+        tail.flip();
+        Path temporary = directory.resolve(LOG_FILE + ".tmp");
+        FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            writeFully(channel, header.putInt(MAGIC).putLong(generation + 1).flip());
+            writeFully(channel, tail);
+            channel.force(true);
+            // The open channel follows the file as it moves into place.
+            Files.move(temporary, directory.resolve(LOG_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // Keep appending to the old log, which is still in place.
+            channel.close();
+            throw e;
+        }
+        FileChannel old = log;
+        log = channel;
+        generation++;
+        old.close();
+    }
+
+    /**
+     * Finds the length of the complete records at the start of the buffer.
+     */
+    private static int completeRecords(ByteBuffer records) {
+        int position = 0;
+        while (records.limit() - position >= Integer.BYTES) {
+            int length = records.getInt(position);
+            if (length < 1 || length > records.limit() - position - Integer.BYTES) {
+                break;
+            }
+            position += Integer.BYTES + length;
+        }
+        return position;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     */
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Empties the log and writes a header for the given generation.
+     */
+    private static void startLog(FileChannel log, long generation) throws IOException {
+        log.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        header.putInt(MAGIC).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            log.write(header, LOG_HEADER_BYTES - header.remaining());
+        }
+        log.force(true);
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full or the file ends.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Writes the whole of the buffer to the channel.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A read-only list of the customers, reading each through the synchronized accessors.
+     */
+    private final class RecordsView extends AbstractList<Customer> implements RandomAccess {
+        @Override
+        public Customer get(int index) {
+            return getRecord(index);
+        }
+
+        @Override
+        public int size() {
+            return DurableAddressBook.this.size();
+        }
+    }
+
+    /**
+     * Logs each edit made to a stored customer.
+     */
+    private final class Recorder implements CustomerListener {
+        @Override
+        public void identityChanged(Customer customer, String oldName, int oldPhoneNumber) {
+            synchronized (DurableAddressBook.this) {
+                Integer id = ids.get(customer);
+                if (id == null || closed) {
+                    return;
+                }
+                if (!oldName.equals(customer.getName())) {
+                    append(record(NAME, id, null, customer.getName()));
+                }
+                if (oldPhoneNumber != customer.getPhoneNumber()) {
+                    append(record(PHONE, id, customer.getPhoneNumber()));
+                }
+            }
+        }
+
+        @Override
+        public void addressChanged(Customer customer, String oldAddress) {
+            synchronized (DurableAddressBook.this) {
+                Integer id = ids.get(customer);
+                if (id != null && !closed) {
+                    String address = customer.getAddress() == null ? "" : customer.getAddress();
+                    append(record(ADDRESS, id, null, address));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package farm.customer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of importing customers in bulk: how many were added, and why each rejected row
+ * was rejected.
+ */
+public final class ImportReport {
+
+    /**
+     * Number of customers added to the address book.
+     */
+    private long imported;
+
+    /**
+     * Every rejected row, in the order they appeared.
+     */
+    private final List<RowError> errors;
+
+    /**
+     * Creates an empty report.
+     */
+    ImportReport() {
+        this.errors = new ArrayList<>();
+    }
+
+    /**
+     * Retrieves the number of customers added to the address book.
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Retrieves every rejected row, in the order they appeared.
+     */
+    public List<RowError> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * Determines whether every row was imported.
+     */
+    public boolean isClean() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * Returns a string summarising the import.
+     */
+    @Override
+    public String toString() {
+        return "Imported " + imported + " customers, rejected " + errors.size() + " rows";
+    }
+
+    /**
+     * Records that a customer was added.
+     */
+    void recordImported() {
+        imported++;
+    }
+
+    /**
+     * Records that the row on the given line was rejected for the given reason.
+     */
+    void recordError(long line, String message) {
+        errors.add(new RowError(line, message));
+    }
+
+    /**
+     * A row that could not be imported.
+     *
+     * @param line the line of the file the row is on, counting from 1.
+     * @param message why the row was rejected.
+     */
+    public record RowError(long line, String message) {
+    }
+}
@@ -0,0 +1,134 @@
+package farm.customer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dictionary giving each distinct string a dense integer ID, storing every string once as UTF-8
+ * in a single shared byte array.
+ * <p>
+ * Repeated strings, such as a street shared by many customers, cost only their ID. Even unique
+ * strings cost only their bytes and an offset, rather than a String object and its array.
+ * Strings are found through an open-addressing hash table, and are never removed.
+ */
+final class StringDictionary {
+
+    /**
+     * UTF-8 bytes of every string, one after another.
+     */
+    private byte[] bytes = new byte[1024];
+
+    /**
+     * Start of each string within bytes, with the end of the last string at index size.
+     */
+    private int[] offsets = new int[17];
+
+    /**
+     * ID plus one of the string in each slot of the hash table, or 0 for an empty slot.
+     */
+    private int[] slots = new int[32];
+
+    /**
+     * Number of strings in the dictionary.
+     */
+    private int size;
+
+    /**
+     * Finds the ID of the given string, adding it to the dictionary if it is not there.
+     */
+    int intern(String string) {
+        byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+        int slot = slotOf(encoded);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size + (size >> 1) + 2);
+        }
+        int start = offsets[size];
+        if (start + encoded.length > bytes.length) {
+            // Grow by half rather than double, as the bytes are most of the dictionary.
+            int capacity = bytes.length + (bytes.length >> 1);
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, start + encoded.length));
+        }
+        System.arraycopy(encoded, 0, bytes, start, encoded.length);
+        offsets[size + 1] = start + encoded.length;
+        slots[slot] = size + 1;
+        size++;
+        // Keep the table at most half full so probe sequences stay short.
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return size - 1;
+    }
+
+    /**
+     * Finds the ID of the given string, or -1 if it is not in the dictionary.
+     */
+    int find(String string) {
+        return slots[slotOf(string.getBytes(StandardCharsets.UTF_8))] - 1;
+    }
+
+    /**
+     * Retrieves the string with the given ID.
+     */
+    String get(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id],
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the number of strings in the dictionary, one more than the highest ID.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the slot holding the given string, or the empty slot it would be placed in.
+     */
+    private int slotOf(byte[] encoded) {
+        int mask = slots.length - 1;
+        for (int i = spread(hash(encoded, 0, encoded.length)) & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0 || Arrays.equals(bytes, offsets[id], offsets[id + 1],
+                    encoded, 0, encoded.length)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the hash table with the given number of slots.
+     */
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int i = spread(hash(bytes, offsets[id], offsets[id + 1])) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+        }
+    }
+
+    /**
+     * Hashes the given range of bytes.
+     */
+    private static int hash(byte[] data, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the bits of a hash so that similar strings land in different slots.
+     */
+    static int spread(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+}
@@ -3,24 +3,91 @@ package farm.inventory;
 import farm.inventory.product.data.*;
 import farm.inventory.product.*;
 import farm.core.*;
+import farm.inventory.event.InventoryEventRing;
+import farm.inventory.event.InventoryEventType;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * A very basic inventory that both stores and handles products individually.
  * Only supports operation on single Products at a time.
+ * <p>
+ * Products are kept in the order they were stocked, and are also queued by barcode and quality
+ * so that the product chosen by the picking policy is found without searching the stock.
  */
 public class BasicInventory implements Inventory {
 
     /**
-     * List of Products in Inventory.
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Oldest stocked product in Inventory, or null if empty.
      **/
-    private final List<Product> products;
+    private Entry first;
+
+    /**
+     * Newest stocked product in Inventory, or null if empty.
+     **/
+    private Entry last;
+
+    /**
+     * Products of each barcode and quality, oldest first, indexed by InventorySnapshot.index.
+     */
+    private final ArrayDeque<Entry>[] queues;
+
+    /**
+     * Total number of products stocked for each barcode, indexed by barcode ordinal.
+     */
+    private final int[] totals;
+
+    /**
+     * Number of products stocked, used to number entries in the order they were stocked.
+     */
+    private long stocked;
+
+    /**
+     * The policy used to choose which product is removed.
+     */
+    private final PickingPolicy picking;
+
+    /**
+     * Number of changes made to the stock, used to version snapshots.
+     */
+    private long version;
 
     /**
-     * Creates new instance of BasicInventory with an empty ArrayList.
+     * Ring that changes to the stock are published to, or null if they are not published.
+     */
+    private InventoryEventRing events;
+
+    /**
+     * A basic inventory supports none of the optional inventory behaviours.
+     */
+    private static final Set<InventoryCapability> CAPABILITIES =
+            Collections.unmodifiableSet(EnumSet.noneOf(InventoryCapability.class));
+
+    /**
+     * Creates new instance of BasicInventory with no products,
+     * removing the first stocked product first.
      */
     public BasicInventory() {
-        this.products = new ArrayList<>();
+        this(PickingPolicy.FIRST_STOCKED);
+    }
+
+    /**
+     * Creates new instance of BasicInventory with no products,
+     * removing products according to the given policy.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BasicInventory(PickingPolicy picking) {
+        this.queues = new ArrayDeque[InventorySnapshot.size()];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        this.totals = new int[Barcode.values().length];
+        this.picking = picking;
     }
 
     /**
@@ -28,7 +95,9 @@ public class BasicInventory implements Inventory {
      */
     @Override
     public void addProduct(Barcode barcode, Quality quality) {
-        products.add(createProduct(barcode, quality));
+        stock(barcode, quality);
+        version++;
+        publish(InventoryEventType.STOCKED, barcode, quality, 1);
     }
 
     /**
@@ -39,7 +108,9 @@ public class BasicInventory implements Inventory {
             throws InvalidStockRequestException {
         // Quantity can be 1
         if (quantity == 1) {
-            products.add(createProduct(barcode, quality));
+            stock(barcode, quality);
+            version++;
+            publish(InventoryEventType.STOCKED, barcode, quality, 1);
         } else {
             // Else or if Quantity != 1, exception
             throw new InvalidStockRequestException("Current inventory is "
@@ -48,34 +119,56 @@ public class BasicInventory implements Inventory {
     }
 
     /**
-     * Determines if a product exists in the inventory with the given barcode.
+     * Adds every product in the manifest to the inventory, provided that the manifest
+     * lists at most one product of each barcode and quality.
      */
     @Override
-    public boolean existsProduct(Barcode barcode) {
-        // Product exists if there is a product in products that has barcode.
-        for (Product product : products) {
-            if (product.getBarcode().equals(barcode)) {
-                return true;
+    public void addProducts(StockManifest manifest) throws InvalidStockRequestException {
+        // Check the whole manifest first so that nothing is stocked if any line is rejected.
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                if (manifest.getQuantity(barcode, quality) > 1) {
+                    throw new InvalidStockRequestException("Current inventory is "
+                            + "not fancy enough. Please supply products one at a time.");
+                }
+            }
+        }
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                if (manifest.getQuantity(barcode, quality) == 1) {
+                    stock(barcode, quality);
+                    publish(InventoryEventType.STOCKED, barcode, quality, 1);
+                }
             }
         }
-        // If loop iterates through products without returning, product does not exist.
-        return false;
+        version++;
+    }
+
+    /**
+     * Determines if a product exists in the inventory with the given barcode.
+     */
+    @Override
+    public boolean existsProduct(Barcode barcode) {
+        return totals[barcode.ordinal()] > 0;
     }
 
     /**
-     * Removes the first product with corresponding barcode from the inventory.
+     * Removes a single product with corresponding barcode from the inventory,
+     * chosen by the inventory's picking policy.
      */
     @Override
     public List<Product> removeProduct(Barcode barcode) {
-        // Iterates through the product list to find and remove the first target product.
-        for (Product product : products) {
-            if (product.getBarcode().equals(barcode)) {
-                products.remove(product);
-                return List.of(product);
-            }
-        }
         // Return empty list if product doesn't exist in products.
-        return List.of();
+        if (!existsProduct(barcode)) {
+            return List.of();
+        }
+        ArrayDeque<Entry> queue = queues[pick(barcode)];
+        Entry entry = queue.pollFirst();
+        unlink(entry);
+        totals[barcode.ordinal()]--;
+        version++;
+        publish(InventoryEventType.REMOVED, barcode, entry.product.getQuality(), 1);
+        return List.of(entry.product);
     }
 
     /**
@@ -99,22 +192,161 @@ public class BasicInventory implements Inventory {
     }
 
     /**
-     * Retrieves the full stock currently held in the inventory.
+     * Retrieves the full stock currently held in the inventory, in the order it was added.
      */
     @Override
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products);
+        List<Product> allProducts = new ArrayList<>();
+        for (Entry entry = first; entry != null; entry = entry.next) {
+            allProducts.add(entry.product);
+        }
+        return allProducts;
+    }
+
+    /**
+     * Walks the stock currently held in the inventory, one barcode and quality at a time.
+     */
+    @Override
+    public void forEachStock(StockVisitor visitor) {
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                int count = queues[InventorySnapshot.index(barcode.ordinal(),
+                        quality.ordinal())].size();
+                if (count > 0) {
+                    visitor.visit(barcode, quality, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the stock currently held in the inventory, in the order it was added.
+     */
+    @Override
+    public Stream<Product> streamProducts() {
+        return Stream.iterate(first, Objects::nonNull, entry -> entry.next)
+                .map(entry -> entry.product);
+    }
+
+    /**
+     * Takes an immutable copy of the stock currently held in the inventory.
+     */
+    @Override
+    public InventorySnapshot snapshot() {
+        int[] counts = new int[InventorySnapshot.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = queues[i].size();
+        }
+        return new InventorySnapshot(counts, version);
+    }
+
+    /**
+     * Retrieves the optional behaviours supported by the inventory.
+     */
+    @Override
+    public Set<InventoryCapability> getCapabilities() {
+        return CAPABILITIES;
+    }
+
+    /**
+     * Retrieves the policy used to choose which products are removed.
+     */
+    public PickingPolicy getPickingPolicy() {
+        return picking;
+    }
+
+    /**
+     * Publishes every subsequent change to the stock to the given event ring,
+     * or stops publishing changes if the ring is null.
+     * The inventory must then only be modified from one thread at a time.
+     */
+    public void setEventRing(InventoryEventRing events) {
+        this.events = events;
+    }
+
+    /**
+     * Publishes a change to the stock, if an event ring has been set.
+     */
+    private void publish(InventoryEventType type, Barcode barcode, Quality quality, int quantity) {
+        if (events != null) {
+            events.publish(type, barcode, quality, quantity);
+        }
     }
 
     /**
-     * Creates a product instance based on barcode and quality.
+     * Retrieves the product instance based on barcode and quality.
      */
     protected Product createProduct(Barcode barcode, Quality quality) {
-        return switch (barcode) {
-            case EGG -> new Egg(quality);
-            case MILK -> new Milk(quality);
-            case JAM -> new Jam(quality);
-            case WOOL -> new Wool(quality);
-        };
+        return ProductFactory.getProduct(barcode, quality);
+    }
+
+    /**
+     * Appends a new product to the end of the stock and to the queue for its quality.
+     */
+    private void stock(Barcode barcode, Quality quality) {
+        Entry entry = new Entry(createProduct(barcode, quality), stocked++);
+        entry.previous = last;
+        if (last == null) {
+            first = entry;
+        } else {
+            last.next = entry;
+        }
+        last = entry;
+        queues[InventorySnapshot.index(barcode.ordinal(), quality.ordinal())].addLast(entry);
+        totals[barcode.ordinal()]++;
+    }
+
+    /**
+     * Finds the queue holding the product of the given barcode that the picking policy chooses,
+     * which must be in stock. Only the head of each quality's queue is examined.
+     */
+    private int pick(Barcode barcode) {
+        int best = -1;
+        for (int rank = 0; rank < QUALITIES.length; rank++) {
+            int q = picking.isQualityOrdered() ? picking.qualityAt(rank) : rank;
+            int slot = InventorySnapshot.index(barcode.ordinal(), q);
+            Entry head = queues[slot].peekFirst();
+            if (head == null) {
+                continue;
+            }
+            if (picking.isQualityOrdered()) {
+                return slot;
+            }
+            if (best < 0 || head.sequence < queues[best].peekFirst().sequence) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Removes an entry from the stocking order.
+     */
+    private void unlink(Entry entry) {
+        if (entry.previous == null) {
+            first = entry.next;
+        } else {
+            entry.previous.next = entry.next;
+        }
+        if (entry.next == null) {
+            last = entry.previous;
+        } else {
+            entry.next.previous = entry.previous;
+        }
+    }
+
+    /**
+     * A stocked product, linked to its neighbours in the order products were stocked.
+     */
+    private static final class Entry {
+        private final Product product;
+        private final long sequence;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(Product product, long sequence) {
+            this.product = product;
+            this.sequence = sequence;
+        }
     }
 }
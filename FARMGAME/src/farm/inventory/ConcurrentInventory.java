@@ -0,0 +1,390 @@
+package farm.inventory;
+
+import farm.inventory.product.Product;
+import farm.inventory.product.ProductFactory;
+import farm.inventory.product.data.*;
+import farm.core.*;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe inventory which stores products as atomic counts of each barcode and quality.
+ * Products can be stocked and removed by many threads at once without a global lock, with
+ * removals reserving stock through compare-and-set on the affected counters only.
+ */
+public class ConcurrentInventory implements Inventory {
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Spacing between counters, in ints, so that each counter sits on its own cache line
+     * and threads updating different products do not contend with each other.
+     */
+    private static final int STRIDE = 16;
+
+    /**
+     * Number of times a snapshot is retried while changes continue, before it holds new changes
+     * back until it has its copy.
+     */
+    private static final int OPTIMISTIC_ATTEMPTS = 16;
+
+    /**
+     * A concurrent inventory supports quantities of products and use from multiple threads.
+     */
+    private static final Set<InventoryCapability> CAPABILITIES = Collections.unmodifiableSet(
+            EnumSet.of(InventoryCapability.QUANTITIES, InventoryCapability.THREAD_SAFE));
+
+    /**
+     * Number of products stocked for each barcode and quality, one counter every STRIDE ints.
+     */
+    private final AtomicIntegerArray counts;
+
+    /**
+     * Number of changes started and finished on each barcode, one counter every STRIDE longs.
+     * Snapshots use these to detect whether a change overlapped with copying the counts.
+     */
+    private final AtomicLongArray changes;
+
+    /**
+     * Held by a snapshot that has given up retrying, for as long as it holds changes back.
+     */
+    private final Object drainLock;
+
+    /**
+     * Whether a snapshot is holding new changes back. Changes that start while this is set step
+     * aside and wait on drainLock, so those already under way can finish and the copy succeed.
+     */
+    private volatile boolean draining;
+
+    /**
+     * The order in which qualities are picked from when stock is removed.
+     */
+    private final PickingPolicy picking;
+
+    /**
+     * Creates new instance of ConcurrentInventory with no stock of any product type,
+     * picking the highest quality products first.
+     */
+    public ConcurrentInventory() {
+        this(PickingPolicy.HIGHEST_QUALITY);
+    }
+
+    /**
+     * Creates new instance of ConcurrentInventory with no stock of any product type,
+     * picking products according to the given quality ordered policy.
+     */
+    public ConcurrentInventory(PickingPolicy picking) {
+        if (!picking.isQualityOrdered()) {
+            throw new IllegalArgumentException("A concurrent inventory can only pick by quality.");
+        }
+        this.picking = picking;
+        this.counts = new AtomicIntegerArray(Barcode.values().length * QUALITIES.length * STRIDE);
+        this.changes = new AtomicLongArray(Barcode.values().length * 2 * STRIDE);
+        this.drainLock = new Object();
+        this.draining = false;
+    }
+
+    /**
+     * Adds a new product with corresponding barcode to the inventory.
+     */
+    @Override
+    public void addProduct(Barcode barcode, Quality quality) {
+        beginChange(barcode.ordinal());
+        counts.getAndIncrement(slot(barcode, quality.ordinal()));
+        endChange(barcode.ordinal());
+    }
+
+    /**
+     * Adds multiple of the product with corresponding barcode to the inventory.
+     */
+    @Override
+    public void addProduct(Barcode barcode, Quality quality, int quantity)
+            throws InvalidStockRequestException {
+        // Nothing is stocked for a non-positive quantity.
+        if (quantity < 1) {
+            return;
+        }
+        beginChange(barcode.ordinal());
+        counts.getAndAdd(slot(barcode, quality.ordinal()), quantity);
+        endChange(barcode.ordinal());
+    }
+
+    /**
+     * Adds every product in the manifest to the inventory in a single pass.
+     * Other threads may observe some lines of the manifest stocked before others.
+     */
+    @Override
+    public void addProducts(StockManifest manifest) throws InvalidStockRequestException {
+        for (Barcode barcode : Barcode.values()) {
+            beginChange(barcode.ordinal());
+            for (int q = 0; q < QUALITIES.length; q++) {
+                int quantity = manifest.getQuantity(barcode, QUALITIES[q]);
+                if (quantity > 0) {
+                    counts.getAndAdd(slot(barcode, q), quantity);
+                }
+            }
+            endChange(barcode.ordinal());
+        }
+    }
+
+    /**
+     * Determines if a product exists in the inventory with the given barcode.
+     */
+    @Override
+    public boolean existsProduct(Barcode barcode) {
+        for (int q = 0; q < QUALITIES.length; q++) {
+            if (counts.get(slot(barcode, q)) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a single product with corresponding barcode from the inventory,
+     * chosen by the inventory's picking policy.
+     */
+    @Override
+    public List<Product> removeProduct(Barcode barcode) {
+        return take(barcode, 1);
+    }
+
+    /**
+     * Removes a given number of products with corresponding barcode from the inventory,
+     * chosen by the inventory's picking policy. If fewer products are stocked than
+     * requested, all of the remaining stock is removed.
+     */
+    @Override
+    public List<Product> removeProduct(Barcode barcode, int quantity)
+            throws FailedTransactionException {
+        return take(barcode, quantity);
+    }
+
+    /**
+     * Retrieves the full stock currently held in the inventory.
+     * Stock changed by other threads during the call may or may not be included.
+     */
+    @Override
+    public List<Product> getAllProducts() {
+        List<Product> allProducts = new ArrayList<>();
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                // Add one product for every unit of this barcode and quality in stock.
+                int count = counts.get(slot(barcode, quality.ordinal()));
+                Product product = ProductFactory.getProduct(barcode, quality);
+                for (int i = 0; i < count; i++) {
+                    allProducts.add(product);
+                }
+            }
+        }
+        return allProducts;
+    }
+
+    /**
+     * Walks the stock currently held in the inventory, one barcode and quality at a time.
+     */
+    @Override
+    public void forEachStock(StockVisitor visitor) {
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                int count = counts.get(slot(barcode, quality.ordinal()));
+                if (count > 0) {
+                    visitor.visit(barcode, quality, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the stock currently held in the inventory, grouped by barcode then quality.
+     */
+    @Override
+    public Stream<Product> streamProducts() {
+        return StreamSupport.stream(new StockSpliterator((b, q) -> counts.get(slot(b, q))), false);
+    }
+
+    /**
+     * Takes an immutable copy of the stock currently held in the inventory, as it was at a
+     * single moment with no change part-way applied. The copy is retried if a change overlapped
+     * with it; if changes keep overlapping, new changes are briefly held back until it succeeds.
+     */
+    @Override
+    public InventorySnapshot snapshot() {
+        long[] started = new long[Barcode.values().length];
+        int[] copy = new int[InventorySnapshot.size()];
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long version = tryCopy(started, copy);
+            if (version >= 0) {
+                return new InventorySnapshot(copy, version);
+            }
+            Thread.onSpinWait();
+        }
+        synchronized (drainLock) {
+            draining = true;
+            try {
+                // Each thread steps aside at most once before waiting, so this ends.
+                while (true) {
+                    long version = tryCopy(started, copy);
+                    if (version >= 0) {
+                        return new InventorySnapshot(copy, version);
+                    }
+                    Thread.onSpinWait();
+                }
+            } finally {
+                draining = false;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the optional behaviours supported by the inventory.
+     */
+    @Override
+    public Set<InventoryCapability> getCapabilities() {
+        return CAPABILITIES;
+    }
+
+    /**
+     * Retrieves the policy used to choose which products are removed.
+     */
+    public PickingPolicy getPickingPolicy() {
+        return picking;
+    }
+
+    /**
+     * Get the quantity of a specific product in the inventory.
+     */
+    public int getStockedQuantity(Barcode barcode) {
+        int total = 0;
+        for (int q = 0; q < QUALITIES.length; q++) {
+            total += counts.get(slot(barcode, q));
+        }
+        return total;
+    }
+
+    /**
+     * Get the quantity of a specific product of the given quality in the inventory.
+     */
+    public int getStockedQuantity(Barcode barcode, Quality quality) {
+        return counts.get(slot(barcode, quality.ordinal()));
+    }
+
+    /**
+     * Reserves up to the given number of products in the picking policy's order, claiming
+     * each quality's share with a compare-and-set so that no unit is handed out twice.
+     */
+    private List<Product> take(Barcode barcode, int quantity) {
+        List<Product> removedProducts = new ArrayList<>();
+        int remaining = quantity;
+        beginChange(barcode.ordinal());
+        for (int rank = 0; rank < QUALITIES.length && remaining > 0; rank++) {
+            int q = picking.qualityAt(rank);
+            int slot = slot(barcode, q);
+            int available = counts.get(slot);
+            // Retry this quality until the claim succeeds or it runs out of stock.
+            while (available > 0) {
+                int taken = Math.min(available, remaining);
+                if (counts.compareAndSet(slot, available, available - taken)) {
+                    remaining -= taken;
+                    Product product = ProductFactory.getProduct(barcode, QUALITIES[q]);
+                    for (int i = 0; i < taken; i++) {
+                        removedProducts.add(product);
+                    }
+                    break;
+                }
+                available = counts.get(slot);
+            }
+        }
+        endChange(barcode.ordinal());
+        return removedProducts;
+    }
+
+    /**
+     * Copies the counts into copy if no change overlapped with copying them, returning the
+     * version copied, or -1 if the copy must be retried.
+     */
+    private long tryCopy(long[] started, int[] copy) {
+        // Read finished before started, so equal values mean no change was in progress.
+        long version = 0;
+        for (int b = 0; b < started.length; b++) {
+            long finished = changes.get(finishedSlot(b));
+            started[b] = changes.get(startedSlot(b));
+            if (started[b] != finished) {
+                return -1;
+            }
+            version += finished;
+        }
+        for (int b = 0; b < started.length; b++) {
+            for (int q = 0; q < QUALITIES.length; q++) {
+                copy[InventorySnapshot.index(b, q)] = counts.get(slot(b, q));
+            }
+        }
+        // The copy is consistent if no change started while it was being taken.
+        for (int b = 0; b < started.length; b++) {
+            if (changes.get(startedSlot(b)) != started[b]) {
+                return -1;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Records that a change to the stock of the given barcode ordinal is starting, first waiting
+     * for any snapshot that is holding changes back.
+     */
+    private void beginChange(int barcode) {
+        while (true) {
+            changes.getAndIncrement(startedSlot(barcode));
+            // Either this sees the snapshot draining, or the snapshot sees this change start.
+            if (!draining) {
+                return;
+            }
+            changes.getAndIncrement(finishedSlot(barcode));
+            synchronized (drainLock) {
+                // The snapshot has its copy once the lock is free.
+            }
+        }
+    }
+
+    /**
+     * Records that a change to the stock of the given barcode ordinal has finished.
+     */
+    private void endChange(int barcode) {
+        changes.getAndIncrement(finishedSlot(barcode));
+    }
+
+    /**
+     * Finds the index of the count of changes started on the given barcode ordinal.
+     */
+    private static int startedSlot(int barcode) {
+        return barcode * 2 * STRIDE;
+    }
+
+    /**
+     * Finds the index of the count of changes finished on the given barcode ordinal.
+     */
+    private static int finishedSlot(int barcode) {
+        return (barcode * 2 + 1) * STRIDE;
+    }
+
+    /**
+     * Finds the index of the counter for the given barcode and quality ordinal.
+     */
+    private static int slot(Barcode barcode, int quality) {
+        return slot(barcode.ordinal(), quality);
+    }
+
+    /**
+     * Finds the index of the counter for the given barcode ordinal and quality ordinal.
+     */
+    private static int slot(int barcode, int quality) {
+        return (barcode * QUALITIES.length + quality) * STRIDE;
+    }
+}
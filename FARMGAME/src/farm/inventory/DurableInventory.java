@@ -0,0 +1,660 @@
+package farm.inventory;
+
+import farm.core.*;
+import farm.inventory.product.Product;
+import farm.inventory.product.data.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An inventory whose stock survives restarts, by recording every change to a write-ahead log
+ * and periodically compacting the log into a snapshot.
+ * <p>
+ * Stock is held in a FancyInventory. Each change made to it is appended to the log as a fixed
+ * size record, and records are written and forced to disk in groups: once enough records are
+ * waiting, or once the commit interval has passed. A change may therefore be lost if the process
+ * dies within one commit interval of making it. When the log grows large it is compacted into a
+ * snapshot of every stock count and then emptied. Opening a durable inventory loads the latest
+ * snapshot and replays the log written since, so recovery time is bounded by the compaction
+ * threshold rather than by the number of products stocked.
+ * <p>
+ * Each record carries a checksum, so a record torn by a crash ends the log when it is replayed.
+ * If writing the log fails, its records are kept pending and retried, and the failure is thrown
+ * by the next call to sync or close.
+ * <p>
+ * All methods are synchronized, so a background thread can commit and compact the log safely.
+ * A durable inventory must be closed to commit the final group of changes.
+ */
+public class DurableInventory implements Inventory, Closeable {
+
+    /**
+     * Name of the write-ahead log file within the storage directory.
+     */
+    private static final String LOG_FILE = "inventory.wal";
+
+    /**
+     * Name of the snapshot file within the storage directory.
+     */
+    private static final String SNAPSHOT_FILE = "inventory.snapshot";
+
+    /**
+     * Identifies the inventory's snapshot file.
+     */
+    private static final int MAGIC = 0x4641524D;
+
+    /**
+     * Identifies the inventory's log file, whose records carry checksums.
+     */
+    private static final int LOG_MAGIC = 0x4641524C;
+
+    /**
+     * Size of the log file header: magic number then generation.
+     */
+    private static final int LOG_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    /**
+     * Size of the fields of a log record: operation, barcode, quality, padding then quantity.
+     */
+    private static final int RECORD_BODY_BYTES = 8;
+
+    /**
+     * Size of a single log record: its fields then a CRC-32C of them.
+     */
+    private static final int RECORD_BYTES = RECORD_BODY_BYTES + Integer.BYTES;
+
+    /**
+     * Operation code of a log record stocking products.
+     */
+    private static final byte STOCK = 1;
+
+    /**
+     * Operation code of a log record removing products.
+     */
+    private static final byte REMOVE = 2;
+
+    /**
+     * Number of records written and forced to disk together.
+     */
+    private static final int GROUP_RECORDS = 4096;
+
+    /**
+     * Longest a record waits before its group is written and forced to disk, in milliseconds.
+     */
+    private static final long COMMIT_INTERVAL_MILLIS = 50;
+
+    /**
+     * Number of records the log may hold before it is compacted into a snapshot.
+     */
+    private static final long COMPACT_RECORDS = 1_000_000;
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Barcodes in declaration order.
+     */
+    private static final Barcode[] BARCODES = Barcode.values();
+
+    /**
+     * The inventory holding the current stock.
+     */
+    private final FancyInventory stock;
+
+    /**
+     * Directory holding the log and snapshot files.
+     */
+    private final Path directory;
+
+    /**
+     * Channel the log is appended through.
+     */
+    private final FileChannel log;
+
+    /**
+     * Records waiting to be written to the log as part of the next group. Holds a single group,
+     * unless writes have failed and the records are waiting to be retried.
+     */
+    private ByteBuffer pending;
+
+    /**
+     * Commits pending records and compacts the log in the background.
+     */
+    private final ScheduledExecutorService committer;
+
+    /**
+     * Whether records have been written to the log since it was last forced to disk.
+     */
+    private boolean unforced;
+
+    /**
+     * Checksums each record appended to the log.
+     */
+    private final CRC32C checksum;
+
+    /**
+     * The first failure to write the log since it was last thrown, or null if there is none.
+     */
+    private IOException failure;
+
+    /**
+     * Generation of the current log; a snapshot covers every log up to its own generation.
+     */
+    private long generation;
+
+    /**
+     * Number of records in the current log, including those pending.
+     */
+    private long logRecords;
+
+    /**
+     * Whether the inventory has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a durable inventory over the recovered stock and an open log.
+     */
+    private DurableInventory(Path directory, FancyInventory stock, FileChannel log,
+                             long generation, long logRecords) {
+        this.directory = directory;
+        this.stock = stock;
+        this.log = log;
+        this.generation = generation;
+        this.logRecords = logRecords;
+        this.pending = ByteBuffer.allocateDirect(GROUP_RECORDS * RECORD_BYTES);
+        this.checksum = new CRC32C();
+        this.closed = false;
+        this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-log-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commitInBackground, COMMIT_INTERVAL_MILLIS,
+                COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the durable inventory stored in the given directory, creating it if it does not
+     * exist, and recovers its stock from the latest snapshot and the log written since.
+     * The highest quality products are removed first.
+     */
+    public static DurableInventory open(Path directory) throws IOException {
+        return open(directory, PickingPolicy.HIGHEST_QUALITY);
+    }
+
+    /**
+     * Opens the durable inventory stored in the given directory, creating it if it does not
+     * exist, removing products according to the given quality ordered picking policy.
+     */
+    public static DurableInventory open(Path directory, PickingPolicy picking)
+            throws IOException {
+        if (!picking.isQualityOrdered()) {
+            throw new IllegalArgumentException("A durable inventory can only pick by quality.");
+        }
+        Files.createDirectories(directory);
+        int[] counts = new int[InventorySnapshot.size()];
+        long snapshotGeneration = readSnapshot(directory.resolve(SNAPSHOT_FILE), counts);
+
+        FileChannel log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long generation = snapshotGeneration + 1;
+        long records = 0;
+        if (log.size() >= LOG_HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            readFully(log, header, 0);
+            header.flip();
+            if (header.getInt() != LOG_MAGIC) {
+                throw new IOException("Not an inventory log: " + directory.resolve(LOG_FILE));
+            }
+            long logGeneration = header.getLong();
+            // A log the snapshot already covers was compacted but never emptied; skip it.
+            if (logGeneration > snapshotGeneration) {
+                records = replay(log, counts);
+                generation = logGeneration;
+            }
+        }
+        if (records == 0) {
+            startLog(log, generation);
+        } else {
+            // Drop any partly written or torn record left at the end of the log by a crash.
+            log.truncate(LOG_HEADER_BYTES + records * RECORD_BYTES);
+        }
+        log.position(log.size());
+
+        FancyInventory stock = new FancyInventory(picking);
+        StockManifest manifest = new StockManifest();
+        for (Barcode barcode : BARCODES) {
+            for (Quality quality : QUALITIES) {
+                int count = counts[InventorySnapshot.index(barcode.ordinal(), quality.ordinal())];
+                if (count > 0) {
+                    manifest.add(barcode, quality, count);
+                }
+            }
+        }
+        try {
+            stock.addProducts(manifest);
+        } catch (InvalidStockRequestException e) {
+            throw new IllegalStateException("FancyInventory rejected recovered stock.", e);
+        }
+        return new DurableInventory(directory, stock, log, generation, records);
+    }
+
+    /**
+     * Adds a new product with corresponding barcode to the inventory.
+     */
+    @Override
+    public synchronized void addProduct(Barcode barcode, Quality quality) {
+        checkOpen();
+        stock.addProduct(barcode, quality);
+        append(STOCK, barcode, quality, 1);
+    }
+
+    /**
+     * Adds multiple of the product with corresponding barcode to the inventory.
+     */
+    @Override
+    public synchronized void addProduct(Barcode barcode, Quality quality, int quantity)
+            throws InvalidStockRequestException {
+        checkOpen();
+        stock.addProduct(barcode, quality, quantity);
+        if (quantity > 0) {
+            append(STOCK, barcode, quality, quantity);
+        }
+    }
+
+    /**
+     * Adds every product in the manifest to the inventory in a single pass.
+     */
+    @Override
+    public synchronized void addProducts(StockManifest manifest)
+            throws InvalidStockRequestException {
+        checkOpen();
+        stock.addProducts(manifest);
+        for (Barcode barcode : BARCODES) {
+            for (Quality quality : QUALITIES) {
+                int quantity = manifest.getQuantity(barcode, quality);
+                if (quantity > 0) {
+                    append(STOCK, barcode, quality, quantity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a product exists in the inventory with the given barcode.
+     */
+    @Override
+    public synchronized boolean existsProduct(Barcode barcode) {
+        return stock.existsProduct(barcode);
+    }
+
+    /**
+     * Removes the highest quality product with corresponding barcode from the inventory.
+     */
+    @Override
+    public synchronized List<Product> removeProduct(Barcode barcode) {
+        checkOpen();
+        return logRemoved(barcode, stock.removeProduct(barcode));
+    }
+
+    /**
+     * Removes a given number of products with corresponding barcode from the inventory,
+     * choosing the highest quality products possible.
+     */
+    @Override
+    public synchronized List<Product> removeProduct(Barcode barcode, int quantity)
+            throws FailedTransactionException {
+        checkOpen();
+        return logRemoved(barcode, stock.removeProduct(barcode, quantity));
+    }
+
+    /**
+     * Retrieves the full stock currently held in the inventory.
+     */
+    @Override
+    public synchronized List<Product> getAllProducts() {
+        return stock.getAllProducts();
+    }
+
+    /**
+     * Walks the stock currently held in the inventory, one barcode and quality at a time.
+     */
+    @Override
+    public synchronized void forEachStock(StockVisitor visitor) {
+        stock.forEachStock(visitor);
+    }
+
+    /**
+     * Streams the stock currently held in the inventory, grouped by barcode then quality.
+     */
+    @Override
+    public synchronized Stream<Product> streamProducts() {
+        return stock.streamProducts();
+    }
+
+    /**
+     * Takes an immutable copy of the stock currently held in the inventory.
+     */
+    @Override
+    public synchronized InventorySnapshot snapshot() {
+        return stock.snapshot();
+    }
+
+    /**
+     * Retrieves the optional behaviours supported by the inventory.
+     */
+    @Override
+    public Set<InventoryCapability> getCapabilities() {
+        return stock.getCapabilities();
+    }
+
+    /**
+     * Get the quantity of a specific product in the inventory.
+     */
+    public synchronized int getStockedQuantity(Barcode barcode) {
+        return stock.getStockedQuantity(barcode);
+    }
+
+    /**
+     * Get the quantity of a specific product of the given quality in the inventory.
+     */
+    public synchronized int getStockedQuantity(Barcode barcode, Quality quality) {
+        return stock.getStockedQuantity(barcode, quality);
+    }
+
+    /**
+     * Writes every pending record to the log and forces it to disk. Also throws the first
+     * failure to write the log since the last call, once its records have been retried.
+     */
+    public synchronized void sync() throws IOException {
+        IOException earlier = failure;
+        failure = null;
+        try {
+            flush();
+        } catch (IOException e) {
+            if (earlier != null) {
+                e.addSuppressed(earlier);
+            }
+            throw e;
+        }
+        if (earlier != null) {
+            throw earlier;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current stock and empties the log it replaces.
+     * The snapshot is written to a temporary file and moved into place, so a crash at any
+     * point leaves either the old snapshot and log or the new snapshot to recover from.
+     */
+    public synchronized void compact() throws IOException {
+        flush();
+        InventorySnapshot snapshot = stock.snapshot();
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + Long.BYTES
+                + InventorySnapshot.size() * Integer.BYTES);
+        buffer.putInt(MAGIC).putLong(generation).putInt(InventorySnapshot.size());
+        for (Barcode barcode : BARCODES) {
+            for (Quality quality : QUALITIES) {
+                buffer.putInt(snapshot.getStockedQuantity(barcode, quality));
+            }
+        }
+        buffer.flip();
+
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The move must be on disk before the log it replaces is emptied.
+        forceDirectory(directory);
+
+        generation++;
+        startLog(log, generation);
+        log.position(LOG_HEADER_BYTES);
+        logRecords = 0;
+    }
+
+    /**
+     * Commits the final group of changes and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        committer.shutdown();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                sync();
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Logs a removal of the given products, recording how many of each quality were taken.
+     */
+    private List<Product> logRemoved(Barcode barcode, List<Product> removed) {
+        int[] quantities = new int[QUALITIES.length];
+        for (Product product : removed) {
+            quantities[product.getQuality().ordinal()]++;
+        }
+        for (int q = 0; q < QUALITIES.length; q++) {
+            if (quantities[q] > 0) {
+                append(REMOVE, barcode, QUALITIES[q], quantities[q]);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Throws if the inventory has been closed, before any change is made to its stock.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Durable inventory has been closed.");
+        }
+    }
+
+    /**
+     * Appends a record to the pending group, writing the group out if it is full. A record is
+     * never dropped, as the stock has already changed; a failed write keeps it pending.
+     */
+    private void append(byte operation, Barcode barcode, Quality quality, int quantity) {
+        // A failed write leaves the group full; keep every record until it can be resent.
+        if (!pending.hasRemaining()) {
+            pending.flip();
+            pending = ByteBuffer.allocateDirect(pending.capacity() * 2).put(pending);
+        }
+        int start = pending.position();
+        pending.put(operation).put((byte) barcode.ordinal()).put((byte) quality.ordinal())
+                .put((byte) 0).putInt(quantity);
+        checksum.reset();
+        checksum.update(pending.slice(start, RECORD_BODY_BYTES));
+        pending.putInt((int) checksum.getValue());
+        logRecords++;
+        if (!pending.hasRemaining()) {
+            try {
+                flush();
+            } catch (IOException e) {
+                remember(e);
+            }
+        }
+    }
+
+    /**
+     * Writes every pending record to the log and forces it to disk.
+     */
+    private void flush() throws IOException {
+        if (pending.position() == 0 && !unforced) {
+            return;
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                log.write(pending);
+                unforced = true;
+            }
+        } finally {
+            // Keep anything a failed write left behind, ready to be resent.
+            pending.compact();
+        }
+        log.force(false);
+        unforced = false;
+    }
+
+    /**
+     * Keeps a failure to write the log until the next call to sync or close throws it.
+     */
+    private void remember(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Commits pending records and compacts the log when it has grown too large.
+     * Run periodically on the committer thread.
+     */
+    private synchronized void commitInBackground() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (logRecords >= COMPACT_RECORDS) {
+                compact();
+            } else {
+                flush();
+            }
+        } catch (IOException e) {
+            // Leave the records pending; the next commit or close will retry them.
+            remember(e);
+        }
+    }
+
+    /**
+     * Reads the snapshot file into counts, returning the generation it covers,
+     * or 0 if there is no snapshot.
+     */
+    private static long readSnapshot(Path file, int[] counts) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < Integer.BYTES * 2 + Long.BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not an inventory snapshot: " + file);
+        }
+        long generation = buffer.getLong();
+        int size = buffer.getInt();
+        if (size != counts.length || buffer.remaining() < size * Integer.BYTES) {
+            throw new IOException("Inventory snapshot does not match product types: " + file);
+        }
+        for (int i = 0; i < size; i++) {
+            counts[i] = buffer.getInt();
+        }
+        return generation;
+    }
+
+    /**
+     * Applies every complete record in the log to counts, returning the number applied.
+     * The log ends at the first record whose checksum does not match, as a crash may have torn
+     * it; a record that matches but holds invalid fields means the log is corrupt.
+     */
+    private static long replay(FileChannel log, int[] counts) throws IOException {
+        long records = (log.size() - LOG_HEADER_BYTES) / RECORD_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(GROUP_RECORDS * RECORD_BYTES * 16);
+        CRC32C checksum = new CRC32C();
+        long applied = 0;
+        long position = LOG_HEADER_BYTES;
+        long end = LOG_HEADER_BYTES + records * RECORD_BYTES;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            readFully(log, buffer, position);
+            position += buffer.position();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                checksum.reset();
+                checksum.update(buffer.slice(start, RECORD_BODY_BYTES));
+                if ((int) checksum.getValue() != buffer.getInt(start + RECORD_BODY_BYTES)) {
+                    return applied;
+                }
+                byte operation = buffer.get();
+                int barcode = buffer.get();
+                int quality = buffer.get();
+                buffer.get();
+                int quantity = buffer.getInt();
+                buffer.getInt();
+                if ((operation != STOCK && operation != REMOVE) || barcode < 0
+                        || barcode >= BARCODES.length || quality < 0
+                        || quality >= QUALITIES.length || quantity < 1) {
+                    throw new IOException("Invalid inventory log record " + applied + ".");
+                }
+                int slot = InventorySnapshot.index(barcode, quality);
+                counts[slot] += operation == REMOVE ? -quantity : quantity;
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Empties the log and writes a header for the given generation.
+     */
+    private static void startLog(FileChannel log, long generation) throws IOException {
+        log.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        header.putInt(LOG_MAGIC).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            log.write(header, LOG_HEADER_BYTES - header.remaining());
+        }
+        log.force(true);
+    }
+
+    /**
+     * Forces the directory's entries to disk, so that a file moved into it stays moved after a
+     * crash. Some platforms cannot open a directory to do so, and there this does nothing.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Directories cannot be opened on this platform; the move is left to the file system.
+        }
+    }
+
+    /**
+     * Fills the buffer from the channel, starting at the given position.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of inventory file.");
+            }
+            offset += read;
+        }
+    }
+}
@@ -3,30 +3,77 @@ package farm.inventory;
 import farm.inventory.product.Product;
 import farm.inventory.product.data.*;
 import farm.core.*;
+import farm.inventory.event.InventoryEventRing;
+import farm.inventory.event.InventoryEventType;
 import farm.inventory.product.*;
 
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * A fancy inventory which stores products in stacks, enabling quantity information.
+ * A fancy inventory which stores products as counts of each barcode and quality, enabling
+ * quantity information.
  * Introduces the concept of performing operations on multiple Products, such as removing 4 Eggs.
  */
 public class FancyInventory implements Inventory {
 
     /**
-     * List of stacks, each stack representing a product type in the inventory.
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * A fancy inventory supports stocking and removing quantities of products.
+     */
+    private static final Set<InventoryCapability> CAPABILITIES =
+            Collections.unmodifiableSet(EnumSet.of(InventoryCapability.QUANTITIES));
+
+    /**
+     * Number of products stocked for each barcode and quality,
+     * indexed by barcode ordinal then quality ordinal.
      **/
-    private final List<Stack<Product>> inventory;
+    private final int[][] counts;
+
+    /**
+     * Total number of products stocked for each barcode, indexed by barcode ordinal.
+     */
+    private final int[] totals;
+
+    /**
+     * Number of changes made to the stock, used to version snapshots.
+     */
+    private long version;
+
+    /**
+     * Ring that changes to the stock are published to, or null if they are not published.
+     */
+    private InventoryEventRing events;
 
     /**
-     * Creates new instance of FancyInventory with empty stacks for each product type.
+     * The order in which qualities are picked from when stock is removed.
+     */
+    private final PickingPolicy picking;
+
+    /**
+     * Creates new instance of FancyInventory with no stock of any product type,
+     * picking the highest quality products first.
      */
     public FancyInventory() {
-        this.inventory = new ArrayList<>();
-        // Initialize a stack for each product type based on its barcode.
-        for (Barcode ignored : Barcode.values()) {
-            inventory.add(new Stack<>());
+        this(PickingPolicy.HIGHEST_QUALITY);
+    }
+
+    /**
+     * Creates new instance of FancyInventory with no stock of any product type,
+     * picking products according to the given quality ordered policy.
+     */
+    public FancyInventory(PickingPolicy picking) {
+        if (!picking.isQualityOrdered()) {
+            throw new IllegalArgumentException("A fancy inventory can only pick by quality.");
         }
+        this.picking = picking;
+        this.counts = new int[Barcode.values().length][QUALITIES.length];
+        this.totals = new int[Barcode.values().length];
     }
 
     /**
@@ -34,9 +81,10 @@ public class FancyInventory implements Inventory {
      */
     @Override
     public void addProduct(Barcode barcode, Quality quality) {
-        // Push the created product onto the stack corresponding to its barcode.
-        // Ordinal used to find index position of barcode.
-        inventory.get(barcode.ordinal()).push(createProduct(barcode, quality));
+        counts[barcode.ordinal()][quality.ordinal()]++;
+        totals[barcode.ordinal()]++;
+        version++;
+        publish(InventoryEventType.STOCKED, barcode, quality, 1);
     }
 
     /**
@@ -45,10 +93,33 @@ public class FancyInventory implements Inventory {
     @Override
     public void addProduct(Barcode barcode, Quality quality, int quantity)
             throws InvalidStockRequestException {
-        // Add the specified quantity of products to the inventory.
-        for (int i = 0; i < quantity; i++) {
-            addProduct(barcode, quality);
+        // Nothing is stocked for a non-positive quantity.
+        if (quantity < 1) {
+            return;
         }
+        counts[barcode.ordinal()][quality.ordinal()] += quantity;
+        totals[barcode.ordinal()] += quantity;
+        version++;
+        publish(InventoryEventType.STOCKED, barcode, quality, quantity);
+    }
+
+    /**
+     * Adds every product in the manifest to the inventory in a single pass.
+     */
+    @Override
+    public void addProducts(StockManifest manifest) throws InvalidStockRequestException {
+        for (Barcode barcode : Barcode.values()) {
+            int[] stock = counts[barcode.ordinal()];
+            for (int q = 0; q < QUALITIES.length; q++) {
+                int quantity = manifest.getQuantity(barcode, QUALITIES[q]);
+                if (quantity > 0) {
+                    stock[q] += quantity;
+                    totals[barcode.ordinal()] += quantity;
+                    publish(InventoryEventType.STOCKED, barcode, QUALITIES[q], quantity);
+                }
+            }
+        }
+        version++;
     }
 
     /**
@@ -56,12 +127,12 @@ public class FancyInventory implements Inventory {
      */
     @Override
     public boolean existsProduct(Barcode barcode) {
-        // Check if the stack corresponding to the barcode is not empty.
-        return !inventory.get(barcode.ordinal()).isEmpty();
+        return totals[barcode.ordinal()] > 0;
     }
 
     /**
-     * Removes the highest quality product with corresponding barcode from the inventory.
+     * Removes a single product with corresponding barcode from the inventory,
+     * chosen by the inventory's picking policy.
      */
     @Override
     public List<Product> removeProduct(Barcode barcode) {
@@ -69,62 +140,49 @@ public class FancyInventory implements Inventory {
         if (!existsProduct(barcode)) {
             return new ArrayList<>();
         }
-        // Get the stack corresponding to the barcode
-        Stack<Product> stack = inventory.get(barcode.ordinal());
-        if (stack == null || stack.isEmpty()) {
-            return new ArrayList<>();
-        }
-        // Find and remove the product with the highest quality
-        Product highestQualityProduct = null;
-        int highestQualityIndex = -1;
-
-        for (int i = 0; i < stack.size(); i++) {
-            Product currentProduct = stack.get(i);
-            if (highestQualityProduct == null || currentProduct.getQuality().ordinal()
-                    > highestQualityProduct.getQuality().ordinal()) {
-                highestQualityProduct = currentProduct;
-                highestQualityIndex = i;
+        int[] stock = counts[barcode.ordinal()];
+        for (int rank = 0; rank < QUALITIES.length; rank++) {
+            int q = picking.qualityAt(rank);
+            if (stock[q] > 0) {
+                stock[q]--;
+                totals[barcode.ordinal()]--;
+                version++;
+                publish(InventoryEventType.REMOVED, barcode, QUALITIES[q], 1);
+                List<Product> removedProducts = new ArrayList<>();
+                removedProducts.add(createProduct(barcode, QUALITIES[q]));
+                return removedProducts;
             }
         }
-        stack.remove(highestQualityIndex); // Remove the highest quality product from the stack
-        List<Product> removedProducts = new ArrayList<>();
-        if (highestQualityProduct != null) {
-            removedProducts.add(highestQualityProduct);
-        }
-
-        return removedProducts;
+        return new ArrayList<>();
     }
 
     /**
      * Removes a given number of products with corresponding barcode from the inventory,
-     * choosing the highest quality products possible.
+     * chosen by the inventory's picking policy.
      */
     @Override
     public List<Product> removeProduct(Barcode barcode, int quantity)
             throws FailedTransactionException {
-        // Get the stack corresponding to the barcode
-        Stack<Product> stack = inventory.get(barcode.ordinal());
-
-        if (stack == null || stack.isEmpty()) {
-            return new ArrayList<>();
-        }
         List<Product> removedProducts = new ArrayList<>();
-        for (int j = 0; j < quantity; j++) {
-            Product highestQualityProduct = null;
-            int highestQualityIndex = -1;
-            // Find the highest quality product in the stack
-            for (int i = 0; i < stack.size(); i++) {
-                Product currentProduct = stack.get(i);
-                if (highestQualityProduct == null || currentProduct.getQuality().ordinal()
-                        > highestQualityProduct.getQuality().ordinal()) {
-                    highestQualityProduct = currentProduct;
-                    highestQualityIndex = i;
-                }
+        int remaining = Math.min(quantity, totals[barcode.ordinal()]);
+        if (remaining < 1) {
+            return removedProducts;
+        }
+        int[] stock = counts[barcode.ordinal()];
+        totals[barcode.ordinal()] -= remaining;
+        version++;
+        // Take as much as possible of each quality, in the picking policy's order.
+        for (int rank = 0; rank < QUALITIES.length && remaining > 0; rank++) {
+            int q = picking.qualityAt(rank);
+            int taken = Math.min(stock[q], remaining);
+            if (taken == 0) {
+                continue;
             }
-            if (highestQualityIndex != -1) {
-                stack.remove(highestQualityIndex);
-                // Remove the highest quality product from the stack
-                removedProducts.add(highestQualityProduct);
+            stock[q] -= taken;
+            remaining -= taken;
+            publish(InventoryEventType.REMOVED, barcode, QUALITIES[q], taken);
+            for (int i = 0; i < taken; i++) {
+                removedProducts.add(createProduct(barcode, QUALITIES[q]));
             }
         }
         return removedProducts;
@@ -137,34 +195,104 @@ public class FancyInventory implements Inventory {
     public List<Product> getAllProducts() {
         List<Product> allProducts = new ArrayList<>();
         for (Barcode barcode : Barcode.values()) {
-            // Get the list of products associated with the current barcode
-            List<Product> products = inventory.get(barcode.ordinal());
-            // If there are products associated with this barcode, add them to the allProducts list
-            if (products != null) {
-                allProducts.addAll(products);
+            for (Quality quality : Quality.values()) {
+                // Add one product for every unit of this barcode and quality in stock.
+                int count = counts[barcode.ordinal()][quality.ordinal()];
+                for (int i = 0; i < count; i++) {
+                    allProducts.add(createProduct(barcode, quality));
+                }
             }
         }
         return allProducts;
     }
 
 
+    /**
+     * Walks the stock currently held in the inventory, one barcode and quality at a time.
+     */
+    @Override
+    public void forEachStock(StockVisitor visitor) {
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                int count = counts[barcode.ordinal()][quality.ordinal()];
+                if (count > 0) {
+                    visitor.visit(barcode, quality, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the stock currently held in the inventory, grouped by barcode then quality.
+     */
+    @Override
+    public Stream<Product> streamProducts() {
+        return StreamSupport.stream(new StockSpliterator((b, q) -> counts[b][q]), false);
+    }
+
+    /**
+     * Takes an immutable copy of the stock currently held in the inventory.
+     */
+    @Override
+    public InventorySnapshot snapshot() {
+        int[] copy = new int[InventorySnapshot.size()];
+        for (int b = 0; b < counts.length; b++) {
+            System.arraycopy(counts[b], 0, copy, InventorySnapshot.index(b, 0), QUALITIES.length);
+        }
+        return new InventorySnapshot(copy, version);
+    }
+
+    /**
+     * Retrieves the optional behaviours supported by the inventory.
+     */
+    @Override
+    public Set<InventoryCapability> getCapabilities() {
+        return CAPABILITIES;
+    }
+
+    /**
+     * Retrieves the policy used to choose which products are removed.
+     */
+    public PickingPolicy getPickingPolicy() {
+        return picking;
+    }
+
     /**
      * Get the quantity of a specific product in the inventory.
      */
     public int getStockedQuantity(Barcode barcode) {
-        // Return the size of the stack corresponding to the barcode.
-        return inventory.get(barcode.ordinal()).size();
+        return totals[barcode.ordinal()];
+    }
+
+    /**
+     * Get the quantity of a specific product of the given quality in the inventory.
+     */
+    public int getStockedQuantity(Barcode barcode, Quality quality) {
+        return counts[barcode.ordinal()][quality.ordinal()];
+    }
+
+    /**
+     * Publishes every subsequent change to the stock to the given event ring,
+     * or stops publishing changes if the ring is null.
+     * The inventory must then only be modified from one thread at a time.
+     */
+    public void setEventRing(InventoryEventRing events) {
+        this.events = events;
+    }
+
+    /**
+     * Publishes a change to the stock, if an event ring has been set.
+     */
+    private void publish(InventoryEventType type, Barcode barcode, Quality quality, int quantity) {
+        if (events != null) {
+            events.publish(type, barcode, quality, quantity);
+        }
     }
 
     /**
-     * * Creates a product instance based on barcode and quality.
+     * Retrieves the product instance based on barcode and quality.
      */
     protected Product createProduct(Barcode barcode, Quality quality) {
-        return switch (barcode) {
-            case EGG -> new Egg(quality);
-            case MILK -> new Milk(quality);
-            case WOOL -> new Wool(quality);
-            case JAM -> new Jam(quality);
-        };
+        return ProductFactory.getProduct(barcode, quality);
     }
 }
@@ -7,6 +7,8 @@ import farm.core.InvalidStockRequestException;
 import farm.core.FailedTransactionException;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * An interface representing the base requirements for an Inventory.
@@ -26,6 +28,13 @@ public interface Inventory {
     void addProduct(Barcode barcode, Quality quality, int quantity)
             throws InvalidStockRequestException;
 
+    /**
+     * Adds every product listed in the manifest to the inventory in a single pass,
+     * provided that the implementing inventory supports the quantities listed.
+     * Nothing is stocked if the manifest cannot be applied in full.
+     */
+    void addProducts(StockManifest manifest) throws InvalidStockRequestException;
+
     /**
      * Determines if a product exists in the inventory with the given barcode.
      */
@@ -46,4 +55,27 @@ public interface Inventory {
      * Retrieves the full stock currently held in the inventory.
      */
     List<Product> getAllProducts();
+
+    /**
+     * Walks the stock currently held in the inventory without copying it, passing the visitor
+     * each group of products sharing a barcode and quality along with how many are stocked.
+     */
+    void forEachStock(StockVisitor visitor);
+
+    /**
+     * Streams the stock currently held in the inventory without copying it.
+     * The inventory must not be modified while the stream is being consumed.
+     */
+    Stream<Product> streamProducts();
+
+    /**
+     * Takes an immutable copy of the stock currently held in the inventory, which stays
+     * consistent while the inventory continues to be modified.
+     */
+    InventorySnapshot snapshot();
+
+    /**
+     * Retrieves the optional behaviours supported by the inventory.
+     */
+    Set<InventoryCapability> getCapabilities();
 }
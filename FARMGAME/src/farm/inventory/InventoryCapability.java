@@ -0,0 +1,15 @@
+package farm.inventory;
+
+/**
+ * Optional behaviours that an inventory may support beyond the base Inventory requirements.
+ */
+public enum InventoryCapability {
+    /**
+     * The inventory can stock and remove more than one product at a time.
+     */
+    QUANTITIES,
+    /**
+     * The inventory can safely be stocked and sold from by multiple threads at once.
+     */
+    THREAD_SAFE
+}
@@ -0,0 +1,120 @@
+package farm.inventory;
+
+import farm.inventory.product.Product;
+import farm.inventory.product.data.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable, point-in-time copy of the stock held in an inventory.
+ * <p>
+ * Taking a snapshot only copies one count per barcode and quality, so reports can read a
+ * consistent view of stock for as long as they need while the live inventory keeps changing.
+ * Snapshots are safe to share between threads.
+ */
+public final class InventorySnapshot {
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Number of products stocked for each barcode and quality,
+     * indexed by barcode ordinal times the number of qualities plus quality ordinal.
+     */
+    private final int[] counts;
+
+    /**
+     * Version of the inventory this snapshot was taken at.
+     */
+    private final long version;
+
+    /**
+     * Creates a snapshot holding the given counts, which must not be modified afterwards.
+     */
+    InventorySnapshot(int[] counts, long version) {
+        this.counts = counts;
+        this.version = version;
+    }
+
+    /**
+     * Retrieves the version of the inventory this snapshot was taken at.
+     * Later snapshots of the same inventory have versions at least as high.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Determines if a product with the given barcode was in stock.
+     */
+    public boolean existsProduct(Barcode barcode) {
+        return getStockedQuantity(barcode) > 0;
+    }
+
+    /**
+     * Get the quantity of a specific product that was in stock.
+     */
+    public int getStockedQuantity(Barcode barcode) {
+        int total = 0;
+        for (int q = 0; q < QUALITIES.length; q++) {
+            total += counts[index(barcode.ordinal(), q)];
+        }
+        return total;
+    }
+
+    /**
+     * Get the quantity of a specific product of the given quality that was in stock.
+     */
+    public int getStockedQuantity(Barcode barcode, Quality quality) {
+        return counts[index(barcode.ordinal(), quality.ordinal())];
+    }
+
+    /**
+     * Walks the stock in the snapshot, one barcode and quality at a time.
+     */
+    public void forEachStock(StockVisitor visitor) {
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                int count = counts[index(barcode.ordinal(), quality.ordinal())];
+                if (count > 0) {
+                    visitor.visit(barcode, quality, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the stock in the snapshot, grouped by barcode then quality.
+     */
+    public Stream<Product> streamProducts() {
+        return StreamSupport.stream(new StockSpliterator((b, q) -> counts[index(b, q)]), false);
+    }
+
+    /**
+     * Retrieves the full stock held in the snapshot.
+     */
+    public List<Product> getAllProducts() {
+        List<Product> allProducts = new ArrayList<>();
+        streamProducts().forEach(allProducts::add);
+        return allProducts;
+    }
+
+    /**
+     * Finds the position of the count for the given barcode ordinal and quality ordinal.
+     */
+    static int index(int barcode, int quality) {
+        return barcode * QUALITIES.length + quality;
+    }
+
+    /**
+     * Number of counts a snapshot holds, one for each barcode and quality.
+     */
+    static int size() {
+        return Barcode.values().length * QUALITIES.length;
+    }
+}
@@ -0,0 +1,522 @@
+package farm.inventory;
+
+import farm.core.*;
+import farm.inventory.product.Product;
+import farm.inventory.product.ProductFactory;
+import farm.inventory.product.data.*;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An inventory for products that expire, storing stock as lots which record when they were
+ * produced.
+ * <p>
+ * Each barcode may be given a shelf life; lots of that barcode expire once their shelf life has
+ * passed and are never handed out afterwards. Lots are indexed into time buckets by expiry, so
+ * sweeping out expired stock only visits the buckets that have come due rather than every lot.
+ * Units stocked close together in time share a lot, so millions of units cost only as much as
+ * the number of deliveries they arrived in.
+ * <p>
+ * All methods are synchronized, so expired stock can be swept on a background thread.
+ */
+public class PerishableInventory implements Inventory, Closeable {
+
+    /**
+     * Shelf lives used when none are given; barcodes not listed never expire.
+     */
+    public static final Map<Barcode, Duration> DEFAULT_SHELF_LIVES = Map.of(
+            Barcode.EGG, Duration.ofDays(28),
+            Barcode.MILK, Duration.ofDays(7),
+            Barcode.JAM, Duration.ofDays(365));
+
+    /**
+     * Units produced within this many milliseconds of the newest lot join that lot.
+     */
+    private static final long LOT_WINDOW_MILLIS = 60_000;
+
+    /**
+     * Width of each expiry bucket, in milliseconds.
+     */
+    private static final long BUCKET_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * A perishable inventory supports stocking and removing quantities of products.
+     */
+    private static final Set<InventoryCapability> CAPABILITIES =
+            Collections.unmodifiableSet(EnumSet.of(InventoryCapability.QUANTITIES));
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Shelf life of each barcode in milliseconds, or 0 if it never expires.
+     */
+    private final long[] shelfLives;
+
+    /**
+     * How unexpired products are chosen when removing stock,
+     * with FIRST_STOCKED taking the oldest lots first.
+     */
+    private final PickingPolicy picking;
+
+    /**
+     * Source of the current time, in milliseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Lots of each barcode and quality, oldest first, indexed by InventorySnapshot.index.
+     */
+    private final ArrayDeque<Lot>[] lots;
+
+    /**
+     * Number of unexpired units of each barcode and quality, indexed by InventorySnapshot.index.
+     */
+    private final int[] counts;
+
+    /**
+     * Lots which can expire and still hold stock, grouped by the bucket their expiry falls in.
+     */
+    private final TreeMap<Long, List<Lot>> expiryBuckets;
+
+    /**
+     * Number of units of each barcode that have expired, indexed by barcode ordinal.
+     */
+    private final long[] expired;
+
+    /**
+     * Number of changes made to the stock, used to version snapshots.
+     */
+    private long version;
+
+    /**
+     * Sweeps expired stock in the background, or null if not started.
+     */
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Creates a perishable inventory using the default shelf lives, picking the highest
+     * quality unexpired stock first, measured by the system clock.
+     */
+    public PerishableInventory() {
+        this(DEFAULT_SHELF_LIVES, PickingPolicy.HIGHEST_QUALITY, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a perishable inventory with the given shelf lives and picking policy, measured by
+     * the provided clock in milliseconds. Barcodes without a shelf life never expire.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PerishableInventory(Map<Barcode, Duration> shelfLives, PickingPolicy picking,
+                               LongSupplier clock) {
+        this.shelfLives = new long[Barcode.values().length];
+        for (Map.Entry<Barcode, Duration> entry : shelfLives.entrySet()) {
+            if (entry.getValue().isNegative() || entry.getValue().isZero()) {
+                throw new IllegalArgumentException("Shelf life must be positive.");
+            }
+            this.shelfLives[entry.getKey().ordinal()] = entry.getValue().toMillis();
+        }
+        this.picking = picking;
+        this.clock = clock;
+        this.lots = new ArrayDeque[InventorySnapshot.size()];
+        for (int i = 0; i < lots.length; i++) {
+            lots[i] = new ArrayDeque<>();
+        }
+        this.counts = new int[InventorySnapshot.size()];
+        this.expiryBuckets = new TreeMap<>();
+        this.expired = new long[Barcode.values().length];
+    }
+
+    /**
+     * Adds a new product with corresponding barcode to the inventory, produced now.
+     */
+    @Override
+    public void addProduct(Barcode barcode, Quality quality) {
+        addProduct(barcode, quality, 1, clock.getAsLong());
+    }
+
+    /**
+     * Adds multiple of the product with corresponding barcode to the inventory, produced now.
+     */
+    @Override
+    public void addProduct(Barcode barcode, Quality quality, int quantity)
+            throws InvalidStockRequestException {
+        addProduct(barcode, quality, quantity, clock.getAsLong());
+    }
+
+    /**
+     * Adds multiple of the product with corresponding barcode to the inventory, produced at the
+     * given time in milliseconds. Products which have already expired are not stocked.
+     */
+    public synchronized void addProduct(Barcode barcode, Quality quality, int quantity,
+                                        long producedAt) {
+        // Nothing is stocked for a non-positive quantity.
+        if (quantity < 1) {
+            return;
+        }
+        long shelfLife = shelfLives[barcode.ordinal()];
+        long expiresAt = shelfLife == 0 ? Long.MAX_VALUE : producedAt + shelfLife;
+        long now = clock.getAsLong();
+        if (expiresAt <= now) {
+            return;
+        }
+        int slot = InventorySnapshot.index(barcode.ordinal(), quality.ordinal());
+        ArrayDeque<Lot> queue = lots[slot];
+        Lot newest = queue.peekLast();
+        // A lot that has expired but not yet been swept must not take in fresh stock.
+        if (newest != null && newest.expiresAt > now && producedAt >= newest.producedAt
+                && producedAt - newest.producedAt < LOT_WINDOW_MILLIS) {
+            // Join the newest lot, keeping its earlier and so more cautious expiry.
+            newest.remaining += quantity;
+        } else {
+            Lot lot = new Lot(slot, producedAt, expiresAt, quantity);
+            insertInOrder(queue, lot);
+            if (expiresAt != Long.MAX_VALUE) {
+                List<Lot> bucket = expiryBuckets.computeIfAbsent(expiresAt / BUCKET_MILLIS,
+                        k -> new ArrayList<>());
+                lot.bucketIndex = bucket.size();
+                bucket.add(lot);
+            }
+        }
+        counts[slot] += quantity;
+        version++;
+    }
+
+    /**
+     * Adds every product in the manifest to the inventory in a single pass, produced now.
+     */
+    @Override
+    public synchronized void addProducts(StockManifest manifest)
+            throws InvalidStockRequestException {
+        long now = clock.getAsLong();
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                addProduct(barcode, quality, manifest.getQuantity(barcode, quality), now);
+            }
+        }
+    }
+
+    /**
+     * Determines if an unexpired product exists in the inventory with the given barcode.
+     */
+    @Override
+    public synchronized boolean existsProduct(Barcode barcode) {
+        return getStockedQuantity(barcode) > 0;
+    }
+
+    /**
+     * Removes a single unexpired product with corresponding barcode from the inventory,
+     * chosen by the inventory's picking policy.
+     */
+    @Override
+    public synchronized List<Product> removeProduct(Barcode barcode) {
+        return take(barcode, 1);
+    }
+
+    /**
+     * Removes a given number of unexpired products with corresponding barcode from the
+     * inventory, chosen by the inventory's picking policy.
+     */
+    @Override
+    public synchronized List<Product> removeProduct(Barcode barcode, int quantity)
+            throws FailedTransactionException {
+        return take(barcode, quantity);
+    }
+
+    /**
+     * Retrieves the full unexpired stock currently held in the inventory.
+     */
+    @Override
+    public synchronized List<Product> getAllProducts() {
+        sweepExpired();
+        List<Product> allProducts = new ArrayList<>();
+        streamProducts().forEach(allProducts::add);
+        return allProducts;
+    }
+
+    /**
+     * Walks the unexpired stock currently held in the inventory,
+     * one barcode and quality at a time.
+     */
+    @Override
+    public synchronized void forEachStock(StockVisitor visitor) {
+        sweepExpired();
+        snapshot().forEachStock(visitor);
+    }
+
+    /**
+     * Streams the unexpired stock currently held in the inventory,
+     * grouped by barcode then quality.
+     */
+    @Override
+    public synchronized Stream<Product> streamProducts() {
+        sweepExpired();
+        return StreamSupport.stream(
+                new StockSpliterator((b, q) -> counts[InventorySnapshot.index(b, q)]), false);
+    }
+
+    /**
+     * Takes an immutable copy of the unexpired stock currently held in the inventory.
+     */
+    @Override
+    public synchronized InventorySnapshot snapshot() {
+        sweepExpired();
+        return new InventorySnapshot(counts.clone(), version);
+    }
+
+    /**
+     * Retrieves the optional behaviours supported by the inventory.
+     */
+    @Override
+    public Set<InventoryCapability> getCapabilities() {
+        return CAPABILITIES;
+    }
+
+    /**
+     * Retrieves the policy used to choose which products are removed.
+     */
+    public PickingPolicy getPickingPolicy() {
+        return picking;
+    }
+
+    /**
+     * Get the quantity of a specific unexpired product in the inventory.
+     */
+    public synchronized int getStockedQuantity(Barcode barcode) {
+        sweepExpired();
+        int total = 0;
+        for (int q = 0; q < QUALITIES.length; q++) {
+            total += counts[InventorySnapshot.index(barcode.ordinal(), q)];
+        }
+        return total;
+    }
+
+    /**
+     * Get the quantity of a specific unexpired product of the given quality in the inventory.
+     */
+    public synchronized int getStockedQuantity(Barcode barcode, Quality quality) {
+        sweepExpired();
+        return counts[InventorySnapshot.index(barcode.ordinal(), quality.ordinal())];
+    }
+
+    /**
+     * Get the number of products with the given barcode that have expired and been discarded.
+     */
+    public synchronized long getExpiredQuantity(Barcode barcode) {
+        sweepExpired();
+        return expired[barcode.ordinal()];
+    }
+
+    /**
+     * Discards every lot whose shelf life has passed, visiting only the expiry buckets that
+     * have come due. Returns the number of units discarded.
+     */
+    public synchronized int sweepExpired() {
+        long now = clock.getAsLong();
+        int discarded = 0;
+        Iterator<Map.Entry<Long, List<Lot>>> due =
+                expiryBuckets.headMap(now / BUCKET_MILLIS, true).entrySet().iterator();
+        while (due.hasNext()) {
+            Map.Entry<Long, List<Lot>> bucket = due.next();
+            List<Lot> pending = bucket.getValue();
+            // Expire lots in place, keeping those in the current bucket not yet due.
+            int kept = 0;
+            for (Lot lot : pending) {
+                if (lot.expiresAt <= now) {
+                    discarded += expire(lot);
+                    lot.bucketIndex = -1;
+                } else {
+                    lot.bucketIndex = kept;
+                    pending.set(kept++, lot);
+                }
+            }
+            pending.subList(kept, pending.size()).clear();
+            if (pending.isEmpty()) {
+                due.remove();
+            }
+        }
+        if (discarded > 0) {
+            version++;
+        }
+        return discarded;
+    }
+
+    /**
+     * Starts sweeping expired stock on a background thread, every given number of milliseconds.
+     */
+    public synchronized void startSweeping(long periodMillis) {
+        if (sweeper != null) {
+            throw new IllegalStateException("Expired stock is already being swept.");
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "perishable-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepExpired, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sweeping expired stock in the background.
+     */
+    @Override
+    public synchronized void close() {
+        if (sweeper != null) {
+            sweeper.shutdown();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Takes up to the given number of unexpired products, according to the picking policy.
+     */
+    private List<Product> take(Barcode barcode, int quantity) {
+        sweepExpired();
+        long now = clock.getAsLong();
+        List<Product> removedProducts = new ArrayList<>();
+        int remaining = quantity;
+        while (remaining > 0) {
+            int slot = nextSlot(barcode, now);
+            if (slot < 0) {
+                break;
+            }
+            Lot lot = lots[slot].peekFirst();
+            int taken = Math.min(lot.remaining, remaining);
+            lot.remaining -= taken;
+            counts[slot] -= taken;
+            remaining -= taken;
+            if (lot.remaining == 0) {
+                lots[slot].pollFirst();
+                unbucket(lot);
+            }
+            Quality quality = QUALITIES[slot % QUALITIES.length];
+            Product product = ProductFactory.getProduct(barcode, quality);
+            for (int i = 0; i < taken; i++) {
+                removedProducts.add(product);
+            }
+        }
+        if (!removedProducts.isEmpty()) {
+            version++;
+        }
+        return removedProducts;
+    }
+
+    /**
+     * Finds the slot of the barcode whose oldest lot should be picked from next,
+     * or -1 if none of its stock is unexpired.
+     */
+    private int nextSlot(Barcode barcode, long now) {
+        int best = -1;
+        for (int rank = 0; rank < QUALITIES.length; rank++) {
+            int q = picking.isQualityOrdered() ? picking.qualityAt(rank) : rank;
+            int slot = InventorySnapshot.index(barcode.ordinal(), q);
+            Lot head = freshHead(slot, now);
+            if (head == null) {
+                continue;
+            }
+            if (picking.isQualityOrdered()) {
+                return slot;
+            }
+            if (best < 0 || head.producedAt < lots[best].peekFirst().producedAt) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Retrieves the oldest unexpired lot in the slot, discarding any emptied or expired lots
+     * ahead of it which the last sweep did not reach.
+     */
+    private Lot freshHead(int slot, long now) {
+        ArrayDeque<Lot> queue = lots[slot];
+        Lot head = queue.peekFirst();
+        while (head != null && (head.remaining == 0 || head.expiresAt <= now)) {
+            expire(head);
+            queue.pollFirst();
+            unbucket(head);
+            head = queue.peekFirst();
+        }
+        return head;
+    }
+
+    /**
+     * Discards the remaining units of a lot, returning how many there were.
+     * The lot is left in its queue, to be dropped when next reached.
+     */
+    private int expire(Lot lot) {
+        int discarded = lot.remaining;
+        lot.remaining = 0;
+        counts[lot.slot] -= discarded;
+        expired[lot.slot / QUALITIES.length] += discarded;
+        return discarded;
+    }
+
+    /**
+     * Drops a lot that has been taken out of its queue from its expiry bucket, if it is still in
+     * one, so emptied lots are not kept until their bucket comes due. The bucket's last lot takes
+     * its place.
+     */
+    private void unbucket(Lot lot) {
+        if (lot.bucketIndex < 0) {
+            return;
+        }
+        long key = lot.expiresAt / BUCKET_MILLIS;
+        List<Lot> bucket = expiryBuckets.get(key);
+        Lot last = bucket.removeLast();
+        if (last != lot) {
+            bucket.set(lot.bucketIndex, last);
+            last.bucketIndex = lot.bucketIndex;
+        }
+        lot.bucketIndex = -1;
+        if (bucket.isEmpty()) {
+            expiryBuckets.remove(key);
+        }
+    }
+
+    /**
+     * Inserts a lot into a queue ordered oldest first, searching from the newest end since
+     * lots almost always arrive in production order.
+     */
+    private static void insertInOrder(ArrayDeque<Lot> queue, Lot lot) {
+        if (queue.isEmpty() || queue.peekLast().producedAt <= lot.producedAt) {
+            queue.addLast(lot);
+            return;
+        }
+        Deque<Lot> newer = new ArrayDeque<>();
+        while (!queue.isEmpty() && queue.peekLast().producedAt > lot.producedAt) {
+            newer.addFirst(queue.pollLast());
+        }
+        queue.addLast(lot);
+        queue.addAll(newer);
+    }
+
+    /**
+     * Units of a single barcode and quality produced at around the same time.
+     */
+    private static final class Lot {
+        private final int slot;
+        private final long producedAt;
+        private final long expiresAt;
+        private int remaining;
+        private int bucketIndex = -1;
+
+        private Lot(int slot, long producedAt, long expiresAt, int remaining) {
+            this.slot = slot;
+            this.producedAt = producedAt;
+            this.expiresAt = expiresAt;
+            this.remaining = remaining;
+        }
+    }
+}
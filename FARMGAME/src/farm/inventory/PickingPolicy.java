@@ -0,0 +1,42 @@
+package farm.inventory;
+
+import farm.inventory.product.data.Quality;
+
+/**
+ * Rules for choosing which products to take when stock is removed from an inventory.
+ */
+public enum PickingPolicy {
+    /**
+     * Take the highest quality products first, as suits retail sales.
+     */
+    HIGHEST_QUALITY,
+    /**
+     * Take the lowest quality products first, as suits wholesale.
+     */
+    LOWEST_QUALITY,
+    /**
+     * Take the products that were stocked earliest first, regardless of quality.
+     */
+    FIRST_STOCKED;
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Determines if the policy picks by quality alone, so that an inventory only needs to know
+     * how many products of each quality it holds to follow it.
+     */
+    public boolean isQualityOrdered() {
+        return this != FIRST_STOCKED;
+    }
+
+    /**
+     * Finds the ordinal of the quality to pick from at the given rank, where rank 0 is the
+     * quality picked from first. Only meaningful for quality ordered policies.
+     */
+    int qualityAt(int rank) {
+        return this == LOWEST_QUALITY ? rank : QUALITIES.length - 1 - rank;
+    }
+}
@@ -0,0 +1,51 @@
+package farm.inventory;
+
+import farm.inventory.product.data.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Chooses which shard of a sharded inventory newly stocked products are placed in.
+ * Routers used by a thread-safe sharded inventory must themselves be thread-safe.
+ */
+@FunctionalInterface
+public interface ShardRouter {
+
+    /**
+     * Chooses the shard, between 0 inclusive and shardCount exclusive, that products with the
+     * given barcode and quality should be stocked in.
+     */
+    int route(Barcode barcode, Quality quality, int shardCount);
+
+    /**
+     * Routes every product with the same barcode to the same shard, so each barn stocks
+     * its own kinds of product.
+     */
+    static ShardRouter byBarcode() {
+        return (barcode, quality, shardCount) -> barcode.ordinal() % shardCount;
+    }
+
+    /**
+     * Routes products to the shard of the location they are being stocked at, as reported by
+     * the given supplier at the time of stocking.
+     */
+    static ShardRouter byLocation(IntSupplier location) {
+        return (barcode, quality, shardCount) -> {
+            int shard = location.getAsInt();
+            if (shard < 0 || shard >= shardCount) {
+                throw new IllegalStateException("No shard exists for location " + shard + ".");
+            }
+            return shard;
+        };
+    }
+
+    /**
+     * Routes each stocking to the next shard in turn, spreading stock evenly across shards.
+     */
+    static ShardRouter roundRobin() {
+        AtomicInteger next = new AtomicInteger();
+        return (barcode, quality, shardCount) ->
+                Math.floorMod(next.getAndIncrement(), shardCount);
+    }
+}
@@ -0,0 +1,456 @@
+package farm.inventory;
+
+import farm.core.*;
+import farm.inventory.product.Product;
+import farm.inventory.product.data.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
+
+/**
+ * An inventory spread over several underlying inventories, such as one for each barn.
+ * <p>
+ * New stock is placed in a shard chosen by a router. The inventory counts how many products of
+ * each barcode and quality every shard holds, so removals pick by quality across all shards,
+ * taking each quality from whichever shards hold it before moving on to the next. Stock counts
+ * are summed from these counts, while snapshots fan out to every shard in parallel on a
+ * fork/join pool and merge the results, so each shard can be read on its own core.
+ * <p>
+ * Shards should pick by the same policy as the sharded inventory, and their stock must only be
+ * changed through it, so that its counts stay accurate. A sharded inventory is thread-safe if
+ * every shard is.
+ */
+public class ShardedInventory implements Inventory {
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * The underlying inventories stock is held in.
+     */
+    private final List<Inventory> shards;
+
+    /**
+     * Chooses the shard new stock is placed in.
+     */
+    private final ShardRouter router;
+
+    /**
+     * Pool that reads from the shards are run on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Optional behaviours supported by every shard.
+     */
+    private final Set<InventoryCapability> capabilities;
+
+    /**
+     * The order in which qualities are picked from when stock is removed.
+     */
+    private final PickingPolicy picking;
+
+    /**
+     * Number of products each shard holds of each barcode and quality, indexed by the shard's
+     * position times InventorySnapshot.size plus InventorySnapshot.index.
+     */
+    private final AtomicIntegerArray counts;
+
+    /**
+     * Creates a sharded inventory over the given inventories, using the given router, picking
+     * the highest quality products first and reading from the shards on the common fork/join
+     * pool.
+     */
+    public ShardedInventory(List<? extends Inventory> shards, ShardRouter router) {
+        this(shards, router, PickingPolicy.HIGHEST_QUALITY, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a sharded inventory over the given inventories, using the given router, picking
+     * the highest quality products first and reading from the shards on the given fork/join
+     * pool.
+     */
+    public ShardedInventory(List<? extends Inventory> shards, ShardRouter router,
+                            ForkJoinPool pool) {
+        this(shards, router, PickingPolicy.HIGHEST_QUALITY, pool);
+    }
+
+    /**
+     * Creates a sharded inventory over the given inventories, using the given router, picking
+     * products according to the given quality ordered policy and reading from the shards on
+     * the given fork/join pool.
+     */
+    public ShardedInventory(List<? extends Inventory> shards, ShardRouter router,
+                            PickingPolicy picking, ForkJoinPool pool) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A sharded inventory needs at least one shard.");
+        }
+        if (!picking.isQualityOrdered()) {
+            throw new IllegalArgumentException("A sharded inventory can only pick by quality.");
+        }
+        this.shards = List.copyOf(shards);
+        this.router = router;
+        this.picking = picking;
+        this.pool = pool;
+        // Count the stock the shards already hold.
+        this.counts = new AtomicIntegerArray(this.shards.size() * InventorySnapshot.size());
+        for (int i = 0; i < this.shards.size(); i++) {
+            InventorySnapshot snapshot = this.shards.get(i).snapshot();
+            for (Barcode barcode : Barcode.values()) {
+                for (Quality quality : QUALITIES) {
+                    counts.set(slot(i, barcode, quality.ordinal()),
+                            snapshot.getStockedQuantity(barcode, quality));
+                }
+            }
+        }
+        // Quantities are emulated for shards that lack them, so are always supported.
+        EnumSet<InventoryCapability> supported = EnumSet.of(InventoryCapability.QUANTITIES);
+        boolean threadSafe = true;
+        for (Inventory shard : this.shards) {
+            threadSafe &= shard.getCapabilities().contains(InventoryCapability.THREAD_SAFE);
+        }
+        if (threadSafe) {
+            supported.add(InventoryCapability.THREAD_SAFE);
+        }
+        this.capabilities = Collections.unmodifiableSet(supported);
+    }
+
+    /**
+     * Adds a new product with corresponding barcode to the shard chosen by the router.
+     */
+    @Override
+    public void addProduct(Barcode barcode, Quality quality) {
+        int shard = route(barcode, quality);
+        shards.get(shard).addProduct(barcode, quality);
+        counts.getAndIncrement(slot(shard, barcode, quality.ordinal()));
+    }
+
+    /**
+     * Adds multiple of the product with corresponding barcode to the shard chosen by the router.
+     */
+    @Override
+    public void addProduct(Barcode barcode, Quality quality, int quantity)
+            throws InvalidStockRequestException {
+        int shard = route(barcode, quality);
+        stock(shards.get(shard), barcode, quality, quantity);
+        if (quantity > 0) {
+            counts.getAndAdd(slot(shard, barcode, quality.ordinal()), quantity);
+        }
+    }
+
+    /**
+     * Adds every product in the manifest to the shards chosen by the router,
+     * handing each shard a single manifest of its share.
+     */
+    @Override
+    public void addProducts(StockManifest manifest) throws InvalidStockRequestException {
+        StockManifest[] shares = new StockManifest[shards.size()];
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : QUALITIES) {
+                int quantity = manifest.getQuantity(barcode, quality);
+                if (quantity == 0) {
+                    continue;
+                }
+                int shard = checkShard(router.route(barcode, quality, shards.size()));
+                if (shares[shard] == null) {
+                    shares[shard] = new StockManifest();
+                }
+                shares[shard].add(barcode, quality, quantity);
+            }
+        }
+        for (int i = 0; i < shares.length; i++) {
+            if (shares[i] == null) {
+                continue;
+            }
+            Inventory shard = shards.get(i);
+            if (shard.getCapabilities().contains(InventoryCapability.QUANTITIES)) {
+                shard.addProducts(shares[i]);
+            } else {
+                for (Barcode barcode : Barcode.values()) {
+                    for (Quality quality : QUALITIES) {
+                        stock(shard, barcode, quality, shares[i].getQuantity(barcode, quality));
+                    }
+                }
+            }
+            for (Barcode barcode : Barcode.values()) {
+                for (Quality quality : QUALITIES) {
+                    int quantity = shares[i].getQuantity(barcode, quality);
+                    if (quantity > 0) {
+                        counts.getAndAdd(slot(i, barcode, quality.ordinal()), quantity);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a product exists in any shard with the given barcode.
+     */
+    @Override
+    public boolean existsProduct(Barcode barcode) {
+        for (Inventory shard : shards) {
+            if (shard.existsProduct(barcode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a single product with corresponding barcode, chosen by the inventory's picking
+     * policy from across every shard.
+     */
+    @Override
+    public List<Product> removeProduct(Barcode barcode) {
+        try {
+            return take(barcode, 1);
+        } catch (FailedTransactionException e) {
+            throw new IllegalStateException("Failed to remove product from shard.", e);
+        }
+    }
+
+    /**
+     * Removes a given number of products with corresponding barcode, chosen by the inventory's
+     * picking policy from across every shard. If fewer products are stocked than requested,
+     * all of the remaining stock is removed.
+     */
+    @Override
+    public List<Product> removeProduct(Barcode barcode, int quantity)
+            throws FailedTransactionException {
+        return take(barcode, quantity);
+    }
+
+    /**
+     * Retrieves the full stock currently held across every shard.
+     */
+    @Override
+    public List<Product> getAllProducts() {
+        return snapshot().getAllProducts();
+    }
+
+    /**
+     * Walks the stock currently held across every shard, one barcode and quality at a time.
+     */
+    @Override
+    public void forEachStock(StockVisitor visitor) {
+        snapshot().forEachStock(visitor);
+    }
+
+    /**
+     * Streams the stock currently held across every shard, grouped by barcode then quality.
+     */
+    @Override
+    public Stream<Product> streamProducts() {
+        return snapshot().streamProducts();
+    }
+
+    /**
+     * Takes an immutable copy of the stock held across every shard, snapshotting the shards in
+     * parallel. Each shard's stock is consistent, though shards may be copied at slightly
+     * different moments.
+     */
+    @Override
+    public InventorySnapshot snapshot() {
+        return pool.invoke(new SnapshotTask(shards, 0, shards.size()));
+    }
+
+    /**
+     * Retrieves the optional behaviours supported by the inventory.
+     */
+    @Override
+    public Set<InventoryCapability> getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * Get the quantity of a specific product held across every shard.
+     */
+    public int getStockedQuantity(Barcode barcode) {
+        int total = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            for (int q = 0; q < QUALITIES.length; q++) {
+                total += counts.get(slot(i, barcode, q));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the quantity of a specific product of the given quality held across every shard.
+     */
+    public int getStockedQuantity(Barcode barcode, Quality quality) {
+        int total = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            total += counts.get(slot(i, barcode, quality.ordinal()));
+        }
+        return total;
+    }
+
+    /**
+     * Retrieves the policy used to choose which products are removed.
+     */
+    public PickingPolicy getPickingPolicy() {
+        return picking;
+    }
+
+    /**
+     * Retrieves the number of shards stock is spread over.
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Retrieves the shard at the given position.
+     */
+    public Inventory getShard(int shard) {
+        return shards.get(checkShard(shard));
+    }
+
+    /**
+     * Takes up to the given number of products in the picking policy's order. Each quality is
+     * taken from every shard counted as holding it before the next quality is tried; as the
+     * better qualities are used up first, each shard hands out the quality being taken.
+     */
+    private List<Product> take(Barcode barcode, int quantity) throws FailedTransactionException {
+        List<Product> removedProducts = new ArrayList<>();
+        int[] taken = new int[QUALITIES.length];
+        for (int rank = 0; rank < QUALITIES.length; rank++) {
+            int q = picking.qualityAt(rank);
+            for (int i = 0; i < shards.size(); i++) {
+                int remaining = quantity - removedProducts.size();
+                if (remaining < 1) {
+                    return removedProducts;
+                }
+                int available = counts.get(slot(i, barcode, q));
+                if (available < 1) {
+                    continue;
+                }
+                int from = removedProducts.size();
+                takeFrom(shards.get(i), barcode, Math.min(available, remaining),
+                        removedProducts);
+                // Count what the shard actually handed out, whatever its quality.
+                Arrays.fill(taken, 0);
+                for (int j = from; j < removedProducts.size(); j++) {
+                    taken[removedProducts.get(j).getQuality().ordinal()]++;
+                }
+                for (int t = 0; t < QUALITIES.length; t++) {
+                    if (taken[t] > 0) {
+                        counts.getAndAdd(slot(i, barcode, t), -taken[t]);
+                    }
+                }
+            }
+        }
+        return removedProducts;
+    }
+
+    /**
+     * Takes up to the given number of products from a shard, one at a time if it lacks
+     * quantities, adding them to removed.
+     */
+    private static void takeFrom(Inventory shard, Barcode barcode, int quantity,
+                                 List<Product> removed) throws FailedTransactionException {
+        if (quantity > 1 && shard.getCapabilities().contains(InventoryCapability.QUANTITIES)) {
+            removed.addAll(shard.removeProduct(barcode, quantity));
+            return;
+        }
+        for (int i = 0; i < quantity; i++) {
+            List<Product> product = shard.removeProduct(barcode);
+            if (product.isEmpty()) {
+                return;
+            }
+            removed.addAll(product);
+        }
+    }
+
+    /**
+     * Finds the position of the shard the router places products with the given barcode and
+     * quality in.
+     */
+    private int route(Barcode barcode, Quality quality) {
+        return checkShard(router.route(barcode, quality, shards.size()));
+    }
+
+    /**
+     * Finds the index of the count of the given shard's stock of a barcode and quality ordinal.
+     */
+    private static int slot(int shard, Barcode barcode, int quality) {
+        return shard * InventorySnapshot.size()
+                + InventorySnapshot.index(barcode.ordinal(), quality);
+    }
+
+    /**
+     * Ensures a shard position chosen by the router exists.
+     */
+    private int checkShard(int shard) {
+        if (shard < 0 || shard >= shards.size()) {
+            throw new IllegalStateException("Router chose shard " + shard + " of "
+                    + shards.size() + ".");
+        }
+        return shard;
+    }
+
+    /**
+     * Stocks a quantity of products in a shard, one at a time if it lacks quantities.
+     */
+    private static void stock(Inventory shard, Barcode barcode, Quality quality, int quantity)
+            throws InvalidStockRequestException {
+        if (quantity < 1) {
+            return;
+        }
+        if (shard.getCapabilities().contains(InventoryCapability.QUANTITIES)) {
+            shard.addProduct(barcode, quality, quantity);
+            return;
+        }
+        for (int i = 0; i < quantity; i++) {
+            shard.addProduct(barcode, quality);
+        }
+    }
+
+    /**
+     * Snapshots a range of shards by splitting it in half until single shards remain,
+     * then sums the counts of the halves.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialised.
+    private static final class SnapshotTask extends RecursiveTask<InventorySnapshot> {
+        private final List<Inventory> shards;
+        private final int from;
+        private final int to;
+
+        private SnapshotTask(List<Inventory> shards, int from, int to) {
+            this.shards = shards;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected InventorySnapshot compute() {
+            if (to - from == 1) {
+                return shards.get(from).snapshot();
+            }
+            int middle = (from + to) >>> 1;
+            SnapshotTask left = new SnapshotTask(shards, from, middle);
+            left.fork();
+            InventorySnapshot right = new SnapshotTask(shards, middle, to).compute();
+            return merge(left.join(), right);
+        }
+
+        private static InventorySnapshot merge(InventorySnapshot left, InventorySnapshot right) {
+            int[] counts = new int[InventorySnapshot.size()];
+            for (Barcode barcode : Barcode.values()) {
+                for (Quality quality : QUALITIES) {
+                    counts[InventorySnapshot.index(barcode.ordinal(), quality.ordinal())] =
+                            left.getStockedQuantity(barcode, quality)
+                            + right.getStockedQuantity(barcode, quality);
+                }
+            }
+            // Each shard's version only grows, so their sum does too.
+            return new InventorySnapshot(counts, left.getVersion() + right.getVersion());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package farm.inventory;
+
+import farm.inventory.product.data.*;
+
+/**
+ * A manifest of products to be stocked together, such as a harvest delivery.
+ * Records a quantity for each barcode and quality so that a whole delivery can be applied
+ * to an inventory in one pass.
+ */
+public class StockManifest {
+
+    /**
+     * Quantity to stock of each barcode and quality,
+     * indexed by barcode ordinal then quality ordinal.
+     */
+    private final int[][] quantities;
+
+    /**
+     * Total quantity of products in the manifest.
+     */
+    private int totalQuantity;
+
+    /**
+     * Creates a new, empty manifest.
+     */
+    public StockManifest() {
+        this.quantities = new int[Barcode.values().length][Quality.values().length];
+        this.totalQuantity = 0;
+    }
+
+    /**
+     * Adds some quantity of products of the given type and quality to the manifest.
+     */
+    public void add(Barcode barcode, Quality quality, int quantity) {
+        if (quantity < 1) {
+            throw new IllegalArgumentException("Quantity must be at least 1.");
+        }
+        int[] line = quantities[barcode.ordinal()];
+        line[quality.ordinal()] = Math.addExact(line[quality.ordinal()], quantity);
+        totalQuantity = Math.addExact(totalQuantity, quantity);
+    }
+
+    /**
+     * Retrieves the quantity of products of the given type and quality in the manifest.
+     */
+    public int getQuantity(Barcode barcode, Quality quality) {
+        return quantities[barcode.ordinal()][quality.ordinal()];
+    }
+
+    /**
+     * Retrieves the total quantity of products in the manifest.
+     */
+    public int getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    /**
+     * Returns if the manifest contains no products.
+     */
+    public boolean isEmpty() {
+        return totalQuantity == 0;
+    }
+}
@@ -0,0 +1,120 @@
+package farm.inventory;
+
+import farm.inventory.product.Product;
+import farm.inventory.product.ProductFactory;
+import farm.inventory.product.data.*;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A spliterator over the stock of a counting inventory, yielding the canonical product once for
+ * every unit stocked. Reads each barcode and quality count only when reaching that group, so
+ * walking the stock never copies it.
+ */
+class StockSpliterator implements Spliterator<Product> {
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Barcodes in declaration order.
+     */
+    private static final Barcode[] BARCODES = Barcode.values();
+
+    /**
+     * Looks up the count stocked for a barcode ordinal and quality ordinal.
+     */
+    private final IntBinaryOperator counts;
+
+    /**
+     * Index of the next group to be read, where groups are ordered by barcode then quality.
+     */
+    private int group;
+
+    /**
+     * Index one past the last group covered by this spliterator.
+     */
+    private final int end;
+
+    /**
+     * Product of the group currently being walked.
+     */
+    private Product current;
+
+    /**
+     * Units of the current group still to be yielded.
+     */
+    private int remaining;
+
+    /**
+     * Creates a spliterator over every group of the inventory backed by the given counts.
+     */
+    StockSpliterator(IntBinaryOperator counts) {
+        this(counts, 0, BARCODES.length * QUALITIES.length);
+    }
+
+    /**
+     * Creates a spliterator over the groups from start (inclusive) to end (exclusive).
+     */
+    private StockSpliterator(IntBinaryOperator counts, int start, int end) {
+        this.counts = counts;
+        this.group = start;
+        this.end = end;
+        this.remaining = 0;
+    }
+
+    /**
+     * Yields the next unit of stock to the action, if any remains.
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super Product> action) {
+        // Move on to the next group with stock once the current group is used up.
+        while (remaining == 0) {
+            if (group >= end) {
+                return false;
+            }
+            int barcode = group / QUALITIES.length;
+            int quality = group % QUALITIES.length;
+            remaining = counts.applyAsInt(barcode, quality);
+            current = ProductFactory.getProduct(BARCODES[barcode], QUALITIES[quality]);
+            group++;
+        }
+        remaining--;
+        action.accept(current);
+        return true;
+    }
+
+    /**
+     * Splits off the first half of the groups not yet started, if there are at least two.
+     */
+    @Override
+    public Spliterator<Product> trySplit() {
+        int mid = (group + end) >>> 1;
+        if (remaining > 0 || mid <= group) {
+            return null;
+        }
+        StockSpliterator prefix = new StockSpliterator(counts, group, mid);
+        group = mid;
+        return prefix;
+    }
+
+    /**
+     * The number of units is not known without reading every count.
+     */
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Units are yielded in barcode then quality order and are never null.
+     */
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -0,0 +1,17 @@
+package farm.inventory;
+
+import farm.inventory.product.data.*;
+
+/**
+ * Receives the stock of an inventory one group at a time, where a group is every product
+ * sharing a barcode and quality. Allows stock to be walked without copying it.
+ */
+@FunctionalInterface
+public interface StockVisitor {
+
+    /**
+     * Visits a group of products with the given barcode and quality, of which count are stocked.
+     * Only called for groups with at least one product in stock.
+     */
+    void visit(Barcode barcode, Quality quality, int count);
+}
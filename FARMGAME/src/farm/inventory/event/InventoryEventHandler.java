@@ -0,0 +1,18 @@
+package farm.inventory.event;
+
+import farm.inventory.product.data.*;
+
+/**
+ * Receives inventory events read from an event ring.
+ */
+@FunctionalInterface
+public interface InventoryEventHandler {
+
+    /**
+     * Handles a change of the given quantity of products with the given barcode and quality.
+     * The sequence numbers events in the order they were published, and endOfBatch is true for
+     * the last event handed over by a single poll.
+     */
+    void onEvent(long sequence, InventoryEventType type, Barcode barcode, Quality quality,
+                 int quantity, boolean endOfBatch);
+}
@@ -0,0 +1,204 @@
+package farm.inventory.event;
+
+import farm.inventory.product.data.*;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * A preallocated ring buffer of inventory change events, written by a single inventory and
+ * read by any number of consumers at their own pace.
+ * <p>
+ * Events are stored as primitives in parallel arrays, so publishing an event never allocates.
+ * The writer never waits for consumers; a consumer that falls more than a full ring behind skips
+ * ahead to the oldest event still held and records how many events it missed.
+ */
+public class InventoryEventRing {
+
+    /**
+     * Event types, indexed by ordinal.
+     */
+    private static final InventoryEventType[] TYPES = InventoryEventType.values();
+
+    /**
+     * Barcodes, indexed by ordinal.
+     */
+    private static final Barcode[] BARCODES = Barcode.values();
+
+    /**
+     * Quality levels, indexed by ordinal.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * Mask mapping a sequence number to its slot; the capacity is a power of two.
+     */
+    private final int mask;
+
+    /**
+     * Event type ordinal stored in each slot.
+     */
+    private final byte[] types;
+
+    /**
+     * Barcode ordinal stored in each slot.
+     */
+    private final byte[] barcodes;
+
+    /**
+     * Quality ordinal stored in each slot.
+     */
+    private final byte[] qualities;
+
+    /**
+     * Quantity stored in each slot.
+     */
+    private final int[] quantities;
+
+    /**
+     * Sequence number of the next event to be published. Written only by the publishing thread,
+     * after the event's slot has been filled.
+     */
+    private volatile long cursor;
+
+    /**
+     * One past the sequence number of the event currently being written, raised before its slot
+     * is filled so that consumers can tell when a slot they read may have been overwritten.
+     */
+    private volatile long claimed;
+
+    /**
+     * Creates a ring able to hold at least the given number of events before overwriting
+     * the oldest. The capacity is rounded up to a power of two.
+     */
+    public InventoryEventRing(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.types = new byte[size];
+        this.barcodes = new byte[size];
+        this.qualities = new byte[size];
+        this.quantities = new int[size];
+        this.cursor = 0;
+        this.claimed = 0;
+    }
+
+    /**
+     * Publishes an event to the ring. Must only ever be called from a single thread at a time.
+     */
+    public void publish(InventoryEventType type, Barcode barcode, Quality quality, int quantity) {
+        long sequence = cursor;
+        int slot = (int) (sequence & mask);
+        claimed = sequence + 1;
+        // Keep the slot's writes from becoming visible before the claim.
+        VarHandle.storeStoreFence();
+        types[slot] = (byte) type.ordinal();
+        barcodes[slot] = (byte) barcode.ordinal();
+        qualities[slot] = (byte) quality.ordinal();
+        quantities[slot] = quantity;
+        // Publishing the new cursor makes the filled slot visible to consumers.
+        cursor = sequence + 1;
+    }
+
+    /**
+     * Retrieves the number of events the ring can hold before overwriting the oldest.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Retrieves the sequence number the next published event will have.
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Creates a consumer which reads events published from now on.
+     */
+    public EventConsumer newConsumer() {
+        return new EventConsumer(cursor);
+    }
+
+    /**
+     * Reads events from an event ring in order, independently of any other consumer.
+     * A consumer must only be used by one thread at a time.
+     */
+    public final class EventConsumer {
+
+        /**
+         * Sequence number of the next event to read.
+         */
+        private long sequence;
+
+        /**
+         * Number of events that were overwritten before they could be read.
+         */
+        private long missed;
+
+        private EventConsumer(long sequence) {
+            this.sequence = sequence;
+            this.missed = 0;
+        }
+
+        /**
+         * Hands up to maxBatch unread events to the handler, in the order they were published,
+         * returning the number of events handled.
+         */
+        public int poll(InventoryEventHandler handler, int maxBatch) {
+            long available = cursor;
+            skipOverwritten(available);
+            int batch = (int) Math.min(available - sequence, maxBatch);
+            for (int i = 0; i < batch; i++) {
+                int slot = (int) (sequence & mask);
+                int type = types[slot];
+                int barcode = barcodes[slot];
+                int quality = qualities[slot];
+                int quantity = quantities[slot];
+                // Keep the slot's reads from moving past the check below.
+                VarHandle.acquireFence();
+                // The writer may have reused this slot while it was read; if so, drop the event.
+                if (claimed - sequence > getCapacity()) {
+                    missed++;
+                    sequence++;
+                    skipOverwritten(cursor);
+                    return i;
+                }
+                handler.onEvent(sequence, TYPES[type], BARCODES[barcode], QUALITIES[quality],
+                        quantity, i == batch - 1);
+                sequence++;
+            }
+            return batch;
+        }
+
+        /**
+         * Retrieves the number of events published but not yet read by this consumer.
+         */
+        public long getBacklog() {
+            return Math.min(cursor - sequence, getCapacity());
+        }
+
+        /**
+         * Retrieves the number of events that were overwritten before this consumer read them.
+         */
+        public long getMissed() {
+            return missed;
+        }
+
+        /**
+         * Moves past any events the writer has already overwritten, counting them as missed.
+         */
+        private void skipOverwritten(long available) {
+            long oldest = available - getCapacity();
+            if (sequence < oldest) {
+                missed += oldest - sequence;
+                sequence = oldest;
+            }
+        }
+    }
+}
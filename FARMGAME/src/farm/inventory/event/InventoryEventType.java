@@ -0,0 +1,15 @@
+package farm.inventory.event;
+
+/**
+ * The kinds of change to an inventory's stock that are published as events.
+ */
+public enum InventoryEventType {
+    /**
+     * Products were added to the inventory.
+     */
+    STOCKED,
+    /**
+     * Products were removed from the inventory.
+     */
+    REMOVED
+}
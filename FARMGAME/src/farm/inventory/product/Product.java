@@ -19,12 +19,25 @@ public abstract class Product {
      */
     private final Quality quality;
 
+    /**
+     * Cached string representation of Product, as barcode and quality never change.
+     */
+    private final String representation;
+
+    /**
+     * Cached hashcode of Product, as barcode and quality never change.
+     */
+    private final int hash;
+
     /**
      * Create a Product instance with Barcode and Quality.
      */
     protected Product(Barcode barcode, Quality quality) {
         this.barcode = barcode;
         this.quality = quality;
+        this.representation = barcode.getDisplayName() + ": " + barcode.getBasePrice()
+                + "c *" + quality + "*";
+        this.hash = Objects.hash(barcode, quality);
     }
 
     /**
@@ -34,6 +47,13 @@ public abstract class Product {
         return barcode;
     }
 
+    /**
+     * Retrieve the catalog ID of the product's type, for indexing arrays by product type.
+     */
+    public int getProductId() {
+        return ProductCatalog.idOf(barcode);
+    }
+
     /**
      * Retrieve the products base sale price.
      */
@@ -60,7 +80,7 @@ public abstract class Product {
      */
     @Override
     public String toString() {
-        return getDisplayName() + ": " + getBasePrice() + "c *" + quality + "*";
+        return representation;
     }
 
     /**
@@ -82,7 +102,7 @@ public abstract class Product {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(barcode, quality);
+        return hash;
     }
 }
 
@@ -0,0 +1,206 @@
+package farm.inventory.product;
+
+import farm.inventory.product.data.*;
+
+import java.util.Arrays;
+
+/**
+ * The catalog of every product type the farm knows of, numbered with dense integer IDs.
+ * <p>
+ * The built-in barcodes are registered first, so each has its ordinal as its ID and arrays
+ * indexed by barcode ordinal are also indexed by catalog ID. Further product types can be
+ * registered at runtime and are numbered from there. Names and prices are held in primitive
+ * arrays, and names are looked up, ignoring case, through an open-addressing hash table, so
+ * lookups never allocate. Registration is synchronized; lookups never lock.
+ * <p>
+ * Product types registered at runtime are only known to the catalog. Inventories, carts,
+ * transactions and the sales history still index stock and sales by Barcode, so only product
+ * types with a barcode can be stocked, sold, priced or listed; toBarcode tells the two apart.
+ */
+public final class ProductCatalog {
+
+    /**
+     * Barcodes, indexed by ordinal.
+     */
+    private static final Barcode[] BARCODES = Barcode.values();
+
+    /**
+     * Number of products the catalog has room for before its arrays are grown.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The current contents of the catalog, replaced whenever a product is registered.
+     */
+    private static volatile Tables tables = createTables();
+
+    /**
+     * ProductCatalog only exposes static methods and should not be instantiated.
+     */
+    private ProductCatalog() {
+    }
+
+    /**
+     * Registers a new product type with the given display name and base price in cents,
+     * returning its ID. The product type has no barcode, so it can be looked up by name but
+     * not yet stocked or sold.
+     */
+    public static synchronized int register(String name, int basePrice) {
+        if (basePrice < 0) {
+            throw new IllegalArgumentException("Base price cannot be negative.");
+        }
+        if (lookup(name) >= 0) {
+            throw new IllegalArgumentException("A product named " + name + " already exists.");
+        }
+        Tables current = tables;
+        int id = current.size;
+        Tables next = id < current.names.length && (id + 1) * 2 <= current.slots.length
+                ? current.withSize(id + 1)
+                : current.grow();
+        next.names[id] = name;
+        next.prices[id] = basePrice;
+        next.insert(id);
+        // Publishing the new tables makes the product visible to lookups.
+        tables = next;
+        return id;
+    }
+
+    /**
+     * Finds the ID of the product type with the given display name, ignoring case,
+     * or -1 if there is none.
+     */
+    public static int lookup(String name) {
+        Tables current = tables;
+        int mask = current.slots.length - 1;
+        for (int i = spread(hash(name)) & mask; ; i = (i + 1) & mask) {
+            int id = current.slots[i] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (id < current.size && current.names[id].equalsIgnoreCase(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the display name of the product type with the given ID.
+     */
+    public static String getName(int id) {
+        return tables.check(id).names[id];
+    }
+
+    /**
+     * Retrieves the base price in cents of the product type with the given ID.
+     */
+    public static int getBasePrice(int id) {
+        return tables.check(id).prices[id];
+    }
+
+    /**
+     * Retrieves the number of product types in the catalog, one more than the highest ID.
+     */
+    public static int size() {
+        return tables.size;
+    }
+
+    /**
+     * Retrieves the ID of the product type with the given barcode.
+     */
+    public static int idOf(Barcode barcode) {
+        return barcode.ordinal();
+    }
+
+    /**
+     * Retrieves the barcode of the product type with the given ID,
+     * or null if it was registered at runtime and has no barcode.
+     */
+    public static Barcode toBarcode(int id) {
+        tables.check(id);
+        return id < BARCODES.length ? BARCODES[id] : null;
+    }
+
+    /**
+     * Creates the catalog's tables holding just the built-in barcodes, in ordinal order.
+     */
+    private static Tables createTables() {
+        Tables initial = new Tables(INITIAL_CAPACITY, BARCODES.length);
+        for (Barcode barcode : BARCODES) {
+            initial.names[barcode.ordinal()] = barcode.getDisplayName();
+            initial.prices[barcode.ordinal()] = barcode.getBasePrice();
+            initial.insert(barcode.ordinal());
+        }
+        return initial;
+    }
+
+    /**
+     * Hashes a name ignoring case, without allocating a lower case copy of it.
+     */
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the bits of a hash code so that similar names land in different slots.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Names, prices and the name lookup table of the catalog, valid for the first size IDs.
+     * Entries at or beyond size may be filled in by a registration still in progress.
+     */
+    private static final class Tables {
+        private final String[] names;
+        private final int[] prices;
+        private final int[] slots;
+        private final int size;
+
+        private Tables(int capacity, int size) {
+            this(new String[capacity], new int[capacity], new int[capacity * 2], size);
+        }
+
+        private Tables(String[] names, int[] prices, int[] slots, int size) {
+            this.names = names;
+            this.prices = prices;
+            this.slots = slots;
+            this.size = size;
+        }
+
+        private Tables withSize(int size) {
+            return new Tables(names, prices, slots, size);
+        }
+
+        private Tables grow() {
+            int capacity = names.length * 2;
+            Tables grown = new Tables(Arrays.copyOf(names, capacity),
+                    Arrays.copyOf(prices, capacity), new int[capacity * 2], size + 1);
+            for (int id = 0; id < size; id++) {
+                grown.insert(id);
+            }
+            return grown;
+        }
+
+        private void insert(int id) {
+            int mask = slots.length - 1;
+            int i = spread(hash(names[id])) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            // Slots hold the ID plus one, leaving zero to mark an empty slot.
+            slots[i] = id + 1;
+        }
+
+        private Tables check(int id) {
+            if (id < 0 || id >= size) {
+                throw new IllegalArgumentException("No product has ID " + id + ".");
+            }
+            return this;
+        }
+    }
+}
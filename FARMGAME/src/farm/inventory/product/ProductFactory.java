@@ -0,0 +1,55 @@
+package farm.inventory.product;
+
+import farm.inventory.product.data.*;
+
+/**
+ * Provides the shared, canonical product instance for each barcode and quality.
+ * <p>
+ * A product is fully defined by its immutable barcode and quality, so rather than creating a new
+ * product for every unit stocked or sold, one instance per combination is shared by all callers.
+ */
+public final class ProductFactory {
+
+    /**
+     * Canonical products, indexed by barcode ordinal then quality ordinal.
+     */
+    private static final Product[][] PRODUCTS = createProducts();
+
+    /**
+     * ProductFactory only exposes static methods and should not be instantiated.
+     */
+    private ProductFactory() {
+    }
+
+    /**
+     * Retrieves the canonical product with the given barcode and quality.
+     */
+    public static Product getProduct(Barcode barcode, Quality quality) {
+        return PRODUCTS[barcode.ordinal()][quality.ordinal()];
+    }
+
+    /**
+     * Retrieves the canonical product equal to the given product.
+     */
+    public static Product canonicalise(Product product) {
+        return getProduct(product.getBarcode(), product.getQuality());
+    }
+
+    /**
+     * Creates one product instance for every combination of barcode and quality.
+     */
+    private static Product[][] createProducts() {
+        Product[][] products = new Product[Barcode.values().length][Quality.values().length];
+        for (Barcode barcode : Barcode.values()) {
+            for (Quality quality : Quality.values()) {
+                products[barcode.ordinal()][quality.ordinal()] = switch (barcode) {
+                    case EGG -> new Egg(quality);
+                    case MILK -> new Milk(quality);
+                    case JAM -> new Jam(quality);
+                    case WOOL -> new Wool(quality);
+                };
+            }
+        }
+        return products;
+    }
+}
@@ -1,29 +1,62 @@
 package farm.sales;
 
 import farm.inventory.product.Product;
+import farm.inventory.product.ProductFactory;
+import farm.inventory.product.data.Barcode;
 import java.util.*;
 
 /**
  * A shopping cart that stores the customer products until they check out.
  */
 public class Cart {
+    /**
+     * Largest number of products a recycled cart keeps room for. Carts that grew beyond it are
+     * given a fresh list, so one large order does not pin a large array in the pool.
+     */
+    private static final int RECYCLE_CAPACITY = 256;
+
     /**
      * List of Products in cart.
      */
-    private final List<Product> cart;
+    private List<Product> cart;
+
+    /**
+     * Read-only view of the products in cart, following its contents as they change.
+     */
+    private List<Product> view;
 
     /**
      * Constructs an empty Cart.
      */
     public Cart() {
         cart = new ArrayList<>();
+        view = Collections.unmodifiableList(cart);
     }
 
     /**
      * Adds a given product to the shopping cart.
+     * The cart holds the shared canonical instance equal to the given product.
      */
     public void addProduct(Product product) {
-        cart.add(product);
+        cart.add(ProductFactory.canonicalise(product));
+    }
+
+    /**
+     * Removes a single product equal to the given product from the shopping cart.
+     * Returns false if the cart held no such product.
+     */
+    public boolean removeProduct(Product product) {
+        return cart.remove(product);
+    }
+
+    /**
+     * Removes up to quantities[q] products with the given barcode and quality ordinal q from the
+     * shopping cart in a single pass, taking those added earliest first.
+     */
+    public void removeProducts(Barcode barcode, int[] quantities) {
+        int[] remaining = quantities.clone();
+        cart.removeIf(product -> product.getBarcode() == barcode
+                && remaining[product.getQuality().ordinal()]-- > 0);
     }
 
     /**
@@ -33,6 +66,28 @@ public class Cart {
         return new ArrayList<>(cart);
     }
 
+    /**
+     * Retrieves a read-only view of the products in the Cart, in the order they were added.
+     * The view is not copied, so it reflects later changes to the cart.
+     */
+    public List<Product> getContentsView() {
+        return view;
+    }
+
+    /**
+     * Retrieves the number of products in the Cart.
+     */
+    public int size() {
+        return cart.size();
+    }
+
+    /**
+     * Retrieves the product at the given position in the Cart, in the order they were added.
+     */
+    public Product get(int index) {
+        return cart.get(index);
+    }
+
     /**
      * Empty out the shopping cart.
      */
@@ -46,4 +101,16 @@ public class Cart {
     public boolean isEmpty() {
         return cart.isEmpty();
     }
+
+    /**
+     * Empties the cart so that it can be reused by another customer.
+     */
+    void recycle() {
+        if (cart.size() > RECYCLE_CAPACITY) {
+            cart = new ArrayList<>();
+            view = Collections.unmodifiableList(cart);
+        } else {
+            cart.clear();
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package farm.sales;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of empty carts, shared by every transaction.
+ * <p>
+ * Only active transactions hold a pooled cart. A cart is taken from the pool when a transaction
+ * starts and is put back when it is finalised, so checkouts reuse the same few carts rather than
+ * making a new one each time. A cart must not be used once it has been put back.
+ */
+public final class CartPool {
+
+    /**
+     * Largest number of idle carts kept for reuse.
+     */
+    private static final int MAX_IDLE = 64;
+
+    /**
+     * Empty carts waiting to be reused.
+     */
+    private static final Deque<Cart> IDLE = new ArrayDeque<>();
+
+    /**
+     * CartPool only exposes static methods and should not be instantiated.
+     */
+    private CartPool() {
+    }
+
+    /**
+     * Takes an empty cart from the pool, making a new one if the pool is empty.
+     */
+    public static Cart acquire() {
+        Cart cart;
+        synchronized (IDLE) {
+            cart = IDLE.poll();
+        }
+        return cart == null ? new Cart() : cart;
+    }
+
+    /**
+     * Empties the cart and puts it back in the pool, unless the pool is already full.
+     */
+    public static void release(Cart cart) {
+        cart.recycle();
+        synchronized (IDLE) {
+            if (IDLE.size() < MAX_IDLE) {
+                IDLE.push(cart);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of idle carts in the pool.
+     */
+    public static int idleCount() {
+        synchronized (IDLE) {
+            return IDLE.size();
+        }
+    }
+}
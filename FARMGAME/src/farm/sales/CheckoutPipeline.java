@@ -0,0 +1,348 @@
+package farm.sales;
+
+import farm.sales.transaction.Transaction;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Completes checked out transactions in the background, so that a till is free for its next
+ * customer as soon as the transaction is finalised.
+ * <p>
+ * Transactions pass through two stages, each run by its own thread: the first records them in
+ * the transaction history, and the second renders their receipts and hands them to a sink, which
+ * may print or persist them. Each stage takes every transaction waiting for it at once, up to
+ * a batch size, so a rush of checkouts is recorded under one lock and persisted in one write
+ * rather than one at a time. The queues between stages are bounded; once they fill, submitting
+ * a transaction waits for room, so a backlog slows the tills rather than growing without limit.
+ * <p>
+ * If a batch cannot be recorded, the pipeline fails and the batch is kept rather than passed on,
+ * so that its sales can still be recorded on the caller's thread with recordUnrecorded.
+ */
+public class CheckoutPipeline implements Closeable {
+
+    /**
+     * Number of transactions each queue holds by default.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Largest number of transactions a stage handles at once by default.
+     */
+    private static final int DEFAULT_BATCH = 64;
+
+    /**
+     * History that transactions are recorded in.
+     */
+    private final TransactionHistory history;
+
+    /**
+     * Receives each batch of rendered receipts.
+     */
+    private final Consumer<List<Receipt>> sink;
+
+    /**
+     * Largest number of transactions a stage handles at once.
+     */
+    private final int batchSize;
+
+    /**
+     * Finalised transactions waiting to be recorded.
+     */
+    private final BlockingQueue<Transaction> recording;
+
+    /**
+     * Recorded transactions waiting for their receipts to be rendered.
+     */
+    private final BlockingQueue<Transaction> rendering;
+
+    /**
+     * Thread recording transactions in the history.
+     */
+    private final Thread recorder;
+
+    /**
+     * Thread rendering receipts and passing them to the sink.
+     */
+    private final Thread renderer;
+
+    /**
+     * Guards submitted and completed, and is notified as transactions complete.
+     */
+    private final Object progress;
+
+    /**
+     * Held shared while a transaction is submitted and exclusively while the pipeline is closed,
+     * so that no transaction is still being queued once closing begins.
+     */
+    private final ReadWriteLock gate;
+
+    /**
+     * Number of transactions submitted.
+     */
+    private long submitted;
+
+    /**
+     * Number of transactions that have passed through every stage.
+     */
+    private long completed;
+
+    /**
+     * Transactions whose batch could not be recorded, in the order they were taken. Guarded by
+     * progress.
+     */
+    private final List<Transaction> unrecorded;
+
+    /**
+     * The first failure of a stage, or null if none has failed.
+     */
+    private volatile RuntimeException failure;
+
+    /**
+     * Whether the pipeline has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a pipeline recording transactions in the given history and passing their
+     * receipts to the given sink, with the default queue capacity and batch size.
+     */
+    public CheckoutPipeline(TransactionHistory history, Consumer<List<Receipt>> sink) {
+        this(history, sink, DEFAULT_CAPACITY, DEFAULT_BATCH);
+    }
+
+    /**
+     * Creates a pipeline recording transactions in the given history and passing their
+     * receipts to the given sink, whose queues each hold up to capacity transactions and whose
+     * stages handle up to batchSize transactions at once.
+     */
+    public CheckoutPipeline(TransactionHistory history, Consumer<List<Receipt>> sink,
+                            int capacity, int batchSize) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Capacity and batch size must be at least 1.");
+        }
+        this.history = history;
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.recording = new ArrayBlockingQueue<>(capacity);
+        this.rendering = new ArrayBlockingQueue<>(capacity);
+        this.progress = new Object();
+        this.unrecorded = new ArrayList<>();
+        this.gate = new ReentrantReadWriteLock();
+        this.recorder = new Thread(this::record, "checkout-recorder");
+        this.renderer = new Thread(this::render, "checkout-renderer");
+        recorder.setDaemon(true);
+        renderer.setDaemon(true);
+        recorder.start();
+        renderer.start();
+    }
+
+    /**
+     * Queues a finalised transaction to be recorded and have its receipt rendered, waiting
+     * for room if the pipeline is full. If this throws, the transaction was not queued.
+     */
+    public void submit(Transaction transaction) throws InterruptedException {
+        if (!transaction.isFinalised()) {
+            throw new IllegalArgumentException("Only finalised transactions can be submitted.");
+        }
+        gate.readLock().lock();
+        try {
+            checkOpen();
+            synchronized (progress) {
+                submitted++;
+            }
+            try {
+                recording.put(transaction);
+            } catch (InterruptedException e) {
+                // The transaction was never queued, so it will never complete.
+                synchronized (progress) {
+                    submitted--;
+                    progress.notifyAll();
+                }
+                throw e;
+            }
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until every transaction submitted so far has passed through every stage.
+     */
+    public void flush() throws InterruptedException {
+        synchronized (progress) {
+            long target = submitted;
+            while (completed < target && failure == null) {
+                progress.wait();
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Retrieves the number of transactions submitted that have not yet passed through every
+     * stage.
+     */
+    public long getBacklog() {
+        synchronized (progress) {
+            return submitted - completed;
+        }
+    }
+
+    /**
+     * Records every transaction whose batch the pipeline failed to record, on the calling
+     * thread. Their receipts are not rendered. If recording fails again, the transactions are
+     * kept for a later call.
+     */
+    public void recordUnrecorded() {
+        synchronized (progress) {
+            if (unrecorded.isEmpty()) {
+                return;
+            }
+            history.recordTransactions(unrecorded);
+            completed += unrecorded.size();
+            unrecorded.clear();
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * Retrieves the number of transactions whose batch the pipeline failed to record.
+     */
+    public int getUnrecorded() {
+        synchronized (progress) {
+            return unrecorded.size();
+        }
+    }
+
+    /**
+     * Completes every submitted transaction, then stops the pipeline's threads.
+     */
+    @Override
+    public void close() {
+        gate.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            gate.writeLock().unlock();
+        }
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            recorder.interrupt();
+            renderer.interrupt();
+        }
+    }
+
+    /**
+     * Records batches of transactions in the history, then queues them for rendering. A batch
+     * that cannot be recorded is kept in unrecorded instead.
+     */
+    private void record() {
+        List<Transaction> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                batch.add(recording.take());
+                recording.drainTo(batch, batchSize - 1);
+                try {
+                    history.recordTransactions(batch);
+                } catch (RuntimeException e) {
+                    synchronized (progress) {
+                        unrecorded.addAll(batch);
+                    }
+                    fail(new IllegalStateException("Failed to record transactions.", e));
+                    batch.clear();
+                    continue;
+                }
+                for (Transaction transaction : batch) {
+                    rendering.put(transaction);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed; every submitted transaction has already completed.
+        }
+    }
+
+    /**
+     * Renders the receipts of batches of transactions and passes them to the sink.
+     */
+    private void render() {
+        List<Transaction> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                batch.add(rendering.take());
+                rendering.drainTo(batch, batchSize - 1);
+                try {
+                    List<Receipt> receipts = new ArrayList<>(batch.size());
+                    for (Transaction transaction : batch) {
+                        receipts.add(new Receipt(transaction, transaction.getReceipt()));
+                    }
+                    sink.accept(receipts);
+                } catch (RuntimeException e) {
+                    fail(new IllegalStateException("Failed to render receipts.", e));
+                } finally {
+                    synchronized (progress) {
+                        completed += batch.size();
+                        progress.notifyAll();
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed; every submitted transaction has already completed.
+        }
+    }
+
+    /**
+     * Remembers the first failure of a stage, and wakes anyone waiting for the pipeline.
+     */
+    private void fail(RuntimeException e) {
+        synchronized (progress) {
+            if (failure == null) {
+                failure = e;
+            }
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * Ensures the pipeline is open and no stage has failed.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Checkout pipeline is closed.");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Rethrows the first failure of a stage, if any stage has failed.
+     */
+    private void checkFailure() {
+        RuntimeException current = failure;
+        if (current != null) {
+            throw current;
+        }
+    }
+
+    /**
+     * A rendered receipt and the transaction it is for.
+     *
+     * @param transaction the transaction the receipt is for.
+     * @param text the rendered receipt.
+     */
+    public record Receipt(Transaction transaction, String text) {
+    }
+}
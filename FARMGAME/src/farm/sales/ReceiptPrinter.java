@@ -54,6 +54,7 @@ public class ReceiptPrinter {
      *     Each entry occupies its own line, unless that entry contains more items than there are headings; in this case, 
      *     the entry 'wraps around' to the next line. For example, if there are two headings and some entry contains three items, 
      *     then the third string in that entry would instead be shown at the start of the <em>next</em> line.
+     *     If the items on a wrapped line are too wide for their columns, each is shown on a line of its own instead.
      *     </li>
      *     <li><strong>Total:</strong> The string to be displayed as the total cost of the whole transaction.</li>
      *     <li><strong>Customer name:</strong> The string to be displayed as the customer's name.</li>
@@ -104,6 +105,7 @@ public class ReceiptPrinter {
      *     Each entry occupies its own line, unless that entry contains more items than there are headings; in this case, 
      *     the entry 'wraps around' to the next line. For example, if there are two headings and some entry contains three items, 
      *     then the third string in that entry would instead be shown at the start of the <em>next</em> line.
+     *     If the items on a wrapped line are too wide for their columns, each is shown on a line of its own instead.
      *     </li>
      *     <li><strong>Total:</strong> The string to be displayed as the total cost of the whole transaction.</li>
      *     <li><strong>Customer name:</strong> The string to be displayed as the customer's name.</li>
@@ -165,7 +167,14 @@ public class ReceiptPrinter {
             }
             
             for (List<String> line : lines) {
-                distribute(sb, colLengths, spacing, line);
+                if (fitsColumns(line, colLengths)) {
+                    distribute(sb, colLengths, spacing, line);
+                } else {
+                    // a wrapped line too wide for the columns gives each item its own line
+                    for (String part : line) {
+                        sb.append(part).append("\n");
+                    }
+                }
             }
         }
     }
@@ -179,6 +188,15 @@ public class ReceiptPrinter {
         sb.append("\n"); // only one linebreak between same-entry lines
     }
 
+    private static boolean fitsColumns(List<String> line, List<Integer> colLengths) {
+        for (int i = 0; i < line.size() - 1; i++) {
+            if (line.get(i).length() > colLengths.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static List<Integer> getMaxLenPerCol(List<String> headings, List<List<String>> entries) {
         List<Integer> colLengths = headings.stream().map(String::length).collect(Collectors.toList());
         for (List<String> entry : entries) {
@@ -1,6 +1,5 @@
 package farm.sales;
 
-import farm.inventory.product.Product;
 import farm.inventory.product.data.Barcode;
 import farm.sales.transaction.*;
 
@@ -9,6 +8,7 @@ import java.util.*;
 /**
  * A record of all past transactions. Handles retrieval of statistics about
  * past transactions, such as earnings and popular products.
+ * Transactions may be recorded and statistics read by several tills at once.
  */
 public class TransactionHistory {
     /**
@@ -26,17 +26,31 @@ public class TransactionHistory {
     /**
      * Adds the given transaction to the record of all past transactions.
      */
-    public void recordTransaction(Transaction transaction) {
+    public synchronized void recordTransaction(Transaction transaction) {
         // Only add the transaction if it has been finalized
         if (transaction.isFinalised()) {
             transactions.add(transaction);
         }
     }
 
+    /**
+     * Adds each of the given transactions, in order, to the record of all past transactions.
+     * Either every finalised transaction in the batch is recorded or, if this throws, none are.
+     */
+    public synchronized void recordTransactions(List<Transaction> batch) {
+        List<Transaction> finalised = new ArrayList<>(batch.size());
+        for (Transaction transaction : batch) {
+            if (transaction.isFinalised()) {
+                finalised.add(transaction);
+            }
+        }
+        transactions.addAll(finalised);
+    }
+
     /**
      * Retrieves the most recent transaction.
      */
-    public Transaction getLastTransaction() {
+    public synchronized Transaction getLastTransaction() {
         // Return the last transaction in the list if it exists, otherwise return null
         if (transactions.isEmpty()) {
             return null;
@@ -47,7 +61,7 @@ public class TransactionHistory {
     /**
      * Calculates the gross earnings, i.e. total income, from all transactions.
      */
-    public int getGrossEarnings() {
+    public synchronized int getGrossEarnings() {
         int totalEarnings = 0;
         // Sum up the total from each transaction to calculate the gross earnings
         for (Transaction transaction : transactions) {
@@ -59,17 +73,11 @@ public class TransactionHistory {
     /**
      * Calculates the gross earnings, i.e. total income, from all sales of a particular product type.
      */
-    public int getGrossEarnings(Barcode type) {
+    public synchronized int getGrossEarnings(Barcode type) {
         int totalEarnings = 0;
         for (Transaction transaction : transactions) {
-            // Iterate over all products in each transaction
-            for (Product product : transaction.getPurchases()) {
-                // Check if the product's barcode matches the specified type
-                if (product.getBarcode().equals(type)) {
-                    // Add the product's base price to the total earnings
-                    totalEarnings += product.getBasePrice();
-                }
-            }
+            // Add the base price of the products of the type, before any discount
+            totalEarnings += transaction.getSummary().getGross(type);
         }
         return totalEarnings;
     }
@@ -78,7 +86,7 @@ public class TransactionHistory {
     /**
      * Calculates the number of transactions made.
      */
-    public int getTotalTransactionsMade() {
+    public synchronized int getTotalTransactionsMade() {
         // Return the number of transactions recorded
         return transactions.size();
     }
@@ -86,11 +94,11 @@ public class TransactionHistory {
     /**
      * Calculates the number of products sold over all transactions.
      */
-    public int getTotalProductsSold() {
+    public synchronized int getTotalProductsSold() {
         int totalProductsSold = 0;
         // Sum the number of products sold in each transaction to get the total products sold
         for (Transaction transaction : transactions) {
-            totalProductsSold += transaction.getPurchases().size();
+            totalProductsSold += transaction.getSummary().getTotalQuantity();
         }
         return totalProductsSold;
     }
@@ -98,17 +106,10 @@ public class TransactionHistory {
     /**
      * Calculates the number of sold of a particular product type, over all transactions.
      */
-    public int getTotalProductsSold(Barcode type) {
+    public synchronized int getTotalProductsSold(Barcode type) {
         int totalProductsSold = 0;
         for (Transaction transaction : transactions) {
-            // Iterate over all products in each transaction
-            for (Product product : transaction.getPurchases()) {
-                // Check if the product's barcode matches the specified type
-                if (product.getBarcode().equals(type)) {
-                    // Increment the total count of products sold
-                    totalProductsSold++;
-                }
-            }
+            totalProductsSold += transaction.getSummary().getQuantity(type);
         }
         return totalProductsSold;
     }
@@ -118,7 +119,7 @@ public class TransactionHistory {
      * Retrieves the transaction with the highest gross earnings,
      * i.e. reported total. If there are multiple return the one that first was recorded.
      */
-    public Transaction getHighestGrossingTransaction() {
+    public synchronized Transaction getHighestGrossingTransaction() {
         // If no transactions have been recorded, return null
         if (transactions.isEmpty()) {
             return null;
@@ -128,9 +129,12 @@ public class TransactionHistory {
         Transaction highestGrossing = transactions.getFirst();
 
         // Iterate through all transactions to find the one with the highest total
+        int highestTotal = highestGrossing.getTotal();
         for (Transaction transaction : transactions) {
-            if (transaction.getTotal() > highestGrossing.getTotal()) {
+            int total = transaction.getTotal();
+            if (total > highestTotal) {
                 highestGrossing = transaction;
+                highestTotal = total;
             }
         }
         return highestGrossing;
@@ -139,18 +143,28 @@ public class TransactionHistory {
     /**
      * Calculates which type of product has had the highest quantity sold overall.
      */
-    public Barcode getMostPopularProduct() {
+    public synchronized Barcode getMostPopularProduct() {
         // If no transactions have been recorded, return a default product (EGG)
         if (transactions.isEmpty()) {
             return Barcode.EGG;
         }
 
+        // Count the sales of every type in a single pass over the transactions
+        Barcode[] barcodes = Barcode.values();
+        int[] counts = new int[barcodes.length];
+        for (Transaction transaction : transactions) {
+            PurchaseSummary summary = transaction.getSummary();
+            for (Barcode barcode : barcodes) {
+                counts[barcode.ordinal()] += summary.getQuantity(barcode);
+            }
+        }
+
         int maxCount = 0;
         Barcode mostPopular = null;
 
         // Iterate through all Barcode values to determine which has the highest sales count
-        for (Barcode barcode : Barcode.values()) {
-            int count = getTotalProductsSold(barcode);
+        for (Barcode barcode : barcodes) {
+            int count = counts[barcode.ordinal()];
             if (count > maxCount) {
                 maxCount = count;
                 mostPopular = barcode;
@@ -162,7 +176,7 @@ public class TransactionHistory {
     /**
      * Calculates the average amount spent by customers across all transactions.
      */
-    public double getAverageSpendPerVisit() {
+    public synchronized double getAverageSpendPerVisit() {
         // If no transactions have been recorded, return 0.0
         if (transactions.isEmpty()) {
             return 0.0;
@@ -175,17 +189,19 @@ public class TransactionHistory {
      * Calculates the average amount a product has been discounted by,
      * across all sales of that product.
      */
-    public double getAverageProductDiscount(Barcode type) {
+    public synchronized double getAverageProductDiscount(Barcode type) {
         double totalDiscountAmount = 0;
         int totalDiscountedProducts = 0;
 
         // Iterate over all transactions to calculate total discounts and count discounted products
         for (Transaction transaction : transactions) {
             if (transaction instanceof SpecialSaleTransaction specialTransaction) {
-                int discount = specialTransaction.getDiscountAmount(type);
+                // Read the percentage the sale was priced with, fixed once finalised
+                PurchaseSummary summary = specialTransaction.getSummary();
+                int discount = summary.getPercentOff(type);
 
                 if (discount > 0) {
-                    int quantity = specialTransaction.getPurchaseQuantity(type);
+                    int quantity = summary.getQuantity(type);
                     totalDiscountAmount += (discount * quantity);
                     totalDiscountedProducts += quantity;
                 }
@@ -4,52 +4,123 @@ import farm.inventory.product.Product;
 import farm.sales.transaction.Transaction;
 import farm.core.FailedTransactionException;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * The controlling class for all transactions. Opens and closes transactions,
- * as well as ensuring only one transaction is active at any given time.
+ * as well as ensuring only one transaction is active at any given time in each session.
+ * <p>
+ * A session is a till, named by a key of the caller's choosing, and many sessions may each run a
+ * transaction at once. Methods without a session key act on DEFAULT_SESSION. A session should
+ * only be used by one thread at a time. Each transaction holds its own cart, so a customer
+ * served at two tills at once has two separate carts.
  */
 public class TransactionManager {
     /**
-     * Assigns variable to ongoing transaction.
+     * The session used by the methods that do not name one.
      */
-    private Transaction ongoingTransaction;
+    public static final String DEFAULT_SESSION = "default";
+
+    /**
+     * Ongoing transaction of each session that has one.
+     */
+    private final ConcurrentMap<String, Transaction> ongoingTransactions;
 
     /**
      * Constructs a TransactionManager with no ongoing transactions.
      */
     public TransactionManager() {
-        this.ongoingTransaction = null;
+        this.ongoingTransactions = new ConcurrentHashMap<>();
     }
 
     /**
      * Determine whether a transaction is currently in progress.
      */
     public boolean hasOngoingTransaction() {
-        return ongoingTransaction != null;
+        return hasOngoingTransaction(DEFAULT_SESSION);
+    }
+
+    /**
+     * Determine whether a transaction is currently in progress in the given session.
+     */
+    public boolean hasOngoingTransaction(String session) {
+        return ongoingTransactions.containsKey(session);
+    }
+
+    /**
+     * Retrieves the transaction currently in progress, or null if there is none.
+     */
+    public Transaction getOngoingTransaction() {
+        return getOngoingTransaction(DEFAULT_SESSION);
+    }
+
+    /**
+     * Retrieves the transaction in progress in the given session, or null if there is none.
+     */
+    public Transaction getOngoingTransaction(String session) {
+        return ongoingTransactions.get(session);
+    }
+
+    /**
+     * Retrieves the number of sessions with a transaction in progress.
+     */
+    public int getOngoingTransactionCount() {
+        return ongoingTransactions.size();
     }
 
     /**
      * Begins managing the specified transaction, provided one is not already ongoing.
      */
     public void setOngoingTransaction(Transaction transaction) throws FailedTransactionException {
-        if (hasOngoingTransaction()) {
+        setOngoingTransaction(DEFAULT_SESSION, transaction);
+    }
+
+    /**
+     * Begins managing the specified transaction in the given session, provided the session
+     * does not already have one ongoing.
+     */
+    public void setOngoingTransaction(String session, Transaction transaction)
+            throws FailedTransactionException {
+        if (ongoingTransactions.putIfAbsent(session, transaction) != null) {
             throw new FailedTransactionException("A transaction is already in progress.");
         }
-        this.ongoingTransaction = transaction;
     }
 
     /**
-     * Adds the given product to the cart of the customer associated with the current transaction.
+     * Adds the given product to the cart of the current transaction.
      */
     public void registerPendingPurchase(Product product) throws FailedTransactionException {
-        if (!hasOngoingTransaction()) {
+        registerPendingPurchase(DEFAULT_SESSION, product);
+    }
+
+    /**
+     * Adds the given product to the cart of the transaction ongoing in the given session.
+     */
+    public void registerPendingPurchase(String session, Product product)
+            throws FailedTransactionException {
+        Transaction ongoingTransaction = ongoingTransactions.get(session);
+        if (ongoingTransaction == null) {
             throw new FailedTransactionException("No ongoing transaction to register purchase.");
         }
         if (ongoingTransaction.isFinalised()) {
             throw new FailedTransactionException("The ongoing transaction "
                     + "has already been finalised.");
         }
-        ongoingTransaction.getAssociatedCustomer().getCart().addProduct(product);
+        ongoingTransaction.getCart().addProduct(product);
+    }
+
+    /**
+     * Stops managing the transaction ongoing in the given session without finalising it, and
+     * readies the session to accept a new ongoing transaction.
+     */
+    public Transaction abandonCurrentTransaction(String session)
+            throws FailedTransactionException {
+        Transaction abandonedTransaction = ongoingTransactions.remove(session);
+        if (abandonedTransaction == null) {
+            throw new FailedTransactionException("No ongoing transaction to abandon.");
+        }
+        return abandonedTransaction;
     }
 
     /**
@@ -57,13 +128,21 @@ public class TransactionManager {
      * TransactionManager to accept a new ongoing transaction.
      */
     public Transaction closeCurrentTransaction() throws FailedTransactionException {
-        if (!hasOngoingTransaction()) {
+        return closeCurrentTransaction(DEFAULT_SESSION);
+    }
+
+    /**
+     * Finalises the transaction ongoing in the given session and readies the session to
+     * accept a new ongoing transaction.
+     */
+    public Transaction closeCurrentTransaction(String session) throws FailedTransactionException {
+        // Take the transaction out first, so that it can only be closed once.
+        Transaction finalisedTransaction = ongoingTransactions.remove(session);
+        if (finalisedTransaction == null) {
             throw new FailedTransactionException("No ongoing transaction to close.");
         }
-        ongoingTransaction.finalise();
-        Transaction finalisedTransaction = ongoingTransaction;
-        ongoingTransaction.getAssociatedCustomer().getCart().setEmpty();
-        ongoingTransaction = null; // Ready for a new transaction
+        // Finalising empties the cart and hands it back to the pool.
+        finalisedTransaction.finalise();
         return finalisedTransaction;
     }
 }
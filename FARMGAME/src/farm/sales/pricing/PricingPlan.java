@@ -0,0 +1,304 @@
+package farm.sales.pricing;
+
+import farm.inventory.product.data.Barcode;
+import farm.inventory.product.data.Quality;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * A set of pricing rules compiled into flat arrays, ready to price whole baskets.
+ * <p>
+ * Rules are grouped by kind and then by the product type or quality they apply to, so pricing
+ * a basket only looks at the rules for the types in it. Each type is priced from the number of
+ * products bought of each quality, in this order:
+ * <ol>
+ *     <li>The unit price is the price of the highest tier reached, or the base price.</li>
+ *     <li>Each product is charged the unit price plus the premium for its quality; these
+ *     charges make up the gross price.</li>
+ *     <li>A bundle deal takes the unit price off for each product it makes free.</li>
+ *     <li>A percentage discount takes subtotal * percent / 100 off the subtotal left after any
+ *     bundle deal.</li>
+ * </ol>
+ * Where several rules of the same kind apply to the same type or quality, the one given last
+ * wins, except for tiers, where the highest tier reached wins. Time-boxed rules only apply while
+ * the plan's clock is within their period, so a plan can be compiled once and used for as long
+ * as its rules stay the same.
+ */
+public final class PricingPlan {
+
+    /**
+     * Product types, indexed by their ordinal.
+     */
+    private static final Barcode[] BARCODES = Barcode.values();
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * A plan without any rules, charging every product its base price.
+     */
+    public static final PricingPlan NONE = compile(List.of());
+
+    /**
+     * Percentage discounts, keyed by barcode ordinal, holding the percentage.
+     */
+    private final Slots percents;
+
+    /**
+     * Bundle deals, keyed by barcode ordinal, holding the bundle size and number charged for.
+     */
+    private final Slots bundles;
+
+    /**
+     * Volume tiers, keyed by barcode ordinal, holding the minimum quantity and unit price.
+     */
+    private final Slots tiers;
+
+    /**
+     * Quality premiums, keyed by quality ordinal, holding the percentage.
+     */
+    private final Slots premiums;
+
+    /**
+     * Source of the current time, in milliseconds, for time-boxed rules.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Creates a plan from compiled rules.
+     */
+    private PricingPlan(Slots percents, Slots bundles, Slots tiers, Slots premiums,
+                        LongSupplier clock) {
+        this.percents = percents;
+        this.bundles = bundles;
+        this.tiers = tiers;
+        this.premiums = premiums;
+        this.clock = clock;
+    }
+
+    /**
+     * Compiles the rules into a plan, timing promotions by the system clock.
+     */
+    public static PricingPlan compile(List<PricingRule> rules) {
+        return compile(rules, System::currentTimeMillis);
+    }
+
+    /**
+     * Compiles the rules into a plan, timing promotions by the given clock.
+     */
+    public static PricingPlan compile(List<PricingRule> rules, LongSupplier clock) {
+        List<Slot> percents = new ArrayList<>();
+        List<Slot> bundles = new ArrayList<>();
+        List<Slot> tiers = new ArrayList<>();
+        List<Slot> premiums = new ArrayList<>();
+        for (PricingRule rule : rules) {
+            long start = Long.MIN_VALUE;
+            long end = Long.MAX_VALUE;
+            // Unwrap promotions, narrowing the period to every one they are nested in.
+            while (rule instanceof PricingRule.TimeBoxed boxed) {
+                start = Math.max(start, boxed.startMillis());
+                end = Math.min(end, boxed.endMillis());
+                rule = boxed.rule();
+            }
+            switch (rule) {
+                case PricingRule.PercentOff p ->
+                        percents.add(new Slot(p.type().ordinal(), p.percent(), 0, start, end));
+                case PricingRule.Bundle b ->
+                        bundles.add(new Slot(b.type().ordinal(), b.buy(), b.payFor(), start, end));
+                case PricingRule.Tier t -> tiers.add(new Slot(t.type().ordinal(), t.minQuantity(),
+                        t.unitPrice(), start, end));
+                case PricingRule.QualityPremium q -> premiums.add(new Slot(q.quality().ordinal(),
+                        q.percent(), 0, start, end));
+                case PricingRule.TimeBoxed boxed -> throw new AssertionError(boxed);
+            }
+        }
+        return new PricingPlan(new Slots(percents, BARCODES.length),
+                new Slots(bundles, BARCODES.length), new Slots(tiers, BARCODES.length),
+                new Slots(premiums, QUALITIES.length), clock);
+    }
+
+    /**
+     * Compiles a plan taking the given percentage off each type, as special sales have.
+     */
+    public static PricingPlan ofDiscounts(Map<Barcode, Integer> discounts) {
+        List<PricingRule> rules = new ArrayList<>(discounts.size());
+        for (Map.Entry<Barcode, Integer> discount : discounts.entrySet()) {
+            rules.add(PricingRule.percentOff(discount.getKey(), discount.getValue()));
+        }
+        return compile(rules);
+    }
+
+    /**
+     * Retrieves the position of the count of products of the given type and quality in the
+     * counts priced by price.
+     */
+    public static int countIndex(Barcode type, Quality quality) {
+        return type.ordinal() * QUALITIES.length + quality.ordinal();
+    }
+
+    /**
+     * Retrieves the number of counts priced by price, one for each type and quality.
+     */
+    public static int countSize() {
+        return BARCODES.length * QUALITIES.length;
+    }
+
+    /**
+     * Retrieves the percentage taken off the given type at the moment, or 0 if there is none.
+     */
+    public int getPercentOff(Barcode type) {
+        int slot = percents.last(type.ordinal(), clock.getAsLong());
+        return slot < 0 ? 0 : percents.first[slot];
+    }
+
+    /**
+     * Prices a basket from the number of products of each type and quality it holds, indexed
+     * by countIndex. For each type, by ordinal, fills in the unit price charged before quality
+     * premiums, the gross price, the amount taken off by bundle deals alone and the amount taken
+     * off by deals and discounts together, all in cents, and the percentage discount applied.
+     */
+    public void price(int[] counts, int[] unitPrices, int[] gross, int[] dealSavings,
+                      int[] discounts, int[] percentsOff) {
+        long now = clock.getAsLong();
+        int[] premium = new int[QUALITIES.length];
+        for (int q = 0; q < premium.length; q++) {
+            int slot = premiums.last(q, now);
+            premium[q] = slot < 0 ? 0 : premiums.first[slot];
+        }
+        for (int b = 0; b < BARCODES.length; b++) {
+            int quantity = 0;
+            for (int q = 0; q < QUALITIES.length; q++) {
+                quantity += counts[b * QUALITIES.length + q];
+            }
+            int unit = BARCODES[b].getBasePrice();
+            unitPrices[b] = unit;
+            percentsOff[b] = 0;
+            if (quantity == 0) {
+                gross[b] = 0;
+                dealSavings[b] = 0;
+                discounts[b] = 0;
+                continue;
+            }
+            int tier = tiers.highest(b, quantity, now);
+            if (tier >= 0) {
+                unit = tiers.second[tier];
+                unitPrices[b] = unit;
+            }
+            int subtotal = 0;
+            for (int q = 0; q < QUALITIES.length; q++) {
+                int count = counts[b * QUALITIES.length + q];
+                if (count > 0) {
+                    subtotal += count * (unit + unit * premium[q] / 100);
+                }
+            }
+            int discount = 0;
+            int bundle = bundles.last(b, now);
+            if (bundle >= 0) {
+                int buy = bundles.first[bundle];
+                discount += quantity / buy * (buy - bundles.second[bundle]) * unit;
+            }
+            dealSavings[b] = discount;
+            int percent = percents.last(b, now);
+            if (percent >= 0) {
+                percentsOff[b] = percents.first[percent];
+                discount += (subtotal - discount) * percentsOff[b] / 100;
+            }
+            gross[b] = subtotal;
+            discounts[b] = discount;
+        }
+    }
+
+    /**
+     * A rule of one kind, for the type or quality with the given key, in effect from start
+     * until end.
+     */
+    private record Slot(int key, int first, int second, long start, long end) {
+    }
+
+    /**
+     * Rules of one kind laid out in arrays, with the rules for each key together and in the
+     * order they were given.
+     */
+    private static final class Slots {
+
+        /**
+         * Index of the first rule for each key, with the end of the last key's rules at the end.
+         */
+        private final int[] offsets;
+
+        /**
+         * First value of each rule.
+         */
+        private final int[] first;
+
+        /**
+         * Second value of each rule.
+         */
+        private final int[] second;
+
+        /**
+         * When each rule starts to apply.
+         */
+        private final long[] start;
+
+        /**
+         * When each rule stops applying.
+         */
+        private final long[] end;
+
+        /**
+         * Lays out the given rules, for keys below keyCount.
+         */
+        private Slots(List<Slot> slots, int keyCount) {
+            offsets = new int[keyCount + 1];
+            for (Slot slot : slots) {
+                offsets[slot.key() + 1]++;
+            }
+            for (int key = 0; key < keyCount; key++) {
+                offsets[key + 1] += offsets[key];
+            }
+            first = new int[slots.size()];
+            second = new int[slots.size()];
+            start = new long[slots.size()];
+            end = new long[slots.size()];
+            int[] next = Arrays.copyOf(offsets, keyCount);
+            for (Slot slot : slots) {
+                int i = next[slot.key()]++;
+                first[i] = slot.first();
+                second[i] = slot.second();
+                start[i] = slot.start();
+                end[i] = slot.end();
+            }
+        }
+
+        /**
+         * Finds the last rule for the key in effect at the given time, or -1 if there is none.
+         */
+        private int last(int key, long now) {
+            for (int i = offsets[key + 1] - 1; i >= offsets[key]; i--) {
+                if (start[i] <= now && now < end[i]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the rule for the key in effect at the given time with the highest first value
+         * no greater than the given quantity, or -1 if there is none.
+         */
+        private int highest(int key, int quantity, long now) {
+            int best = -1;
+            for (int i = offsets[key]; i < offsets[key + 1]; i++) {
+                if (start[i] <= now && now < end[i] && first[i] <= quantity
+                        && (best < 0 || first[i] >= first[best])) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+}
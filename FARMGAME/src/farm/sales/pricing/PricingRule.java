@@ -0,0 +1,131 @@
+package farm.sales.pricing;
+
+import farm.inventory.product.data.Barcode;
+import farm.inventory.product.data.Quality;
+
+/**
+ * A single rule for pricing the products in a basket. Rules are compiled together into a
+ * PricingPlan, which describes how they combine.
+ */
+public sealed interface PricingRule permits PricingRule.PercentOff, PricingRule.Bundle,
+        PricingRule.Tier, PricingRule.QualityPremium, PricingRule.TimeBoxed {
+
+    /**
+     * Takes the given percentage off the price of every product of a type.
+     */
+    static PricingRule percentOff(Barcode type, int percent) {
+        return new PercentOff(type, percent);
+    }
+
+    /**
+     * Charges for only payFor products of a type out of every buy bought,
+     * e.g. bundle(MILK, 3, 2) for three milk for the price of two.
+     */
+    static PricingRule bundle(Barcode type, int buy, int payFor) {
+        return new Bundle(type, buy, payFor);
+    }
+
+    /**
+     * Charges unitPrice cents each for products of a type once at least minQuantity are bought.
+     */
+    static PricingRule tier(Barcode type, int minQuantity, int unitPrice) {
+        return new Tier(type, minQuantity, unitPrice);
+    }
+
+    /**
+     * Adds the given percentage to the price of every product of the given quality.
+     */
+    static PricingRule qualityPremium(Quality quality, int percent) {
+        return new QualityPremium(quality, percent);
+    }
+
+    /**
+     * Applies the rule only from the start time until, but not including, the end time,
+     * both in milliseconds since the epoch.
+     */
+    static PricingRule during(PricingRule rule, long startMillis, long endMillis) {
+        return new TimeBoxed(rule, startMillis, endMillis);
+    }
+
+    /**
+     * A percentage taken off a type's price. The percentage is applied as given, without bounds.
+     *
+     * @param type the type of product discounted.
+     * @param percent the percentage taken off.
+     */
+    record PercentOff(Barcode type, int percent) implements PricingRule {
+    }
+
+    /**
+     * A deal charging for payFor products out of every buy of a type.
+     *
+     * @param type the type of product in the deal.
+     * @param buy the number of products in each bundle.
+     * @param payFor the number of products charged for in each bundle.
+     */
+    record Bundle(Barcode type, int buy, int payFor) implements PricingRule {
+        /**
+         * Ensures the bundle charges for fewer products than it contains.
+         */
+        public Bundle {
+            if (payFor < 0 || buy <= payFor) {
+                throw new IllegalArgumentException("A bundle must charge for fewer products "
+                        + "than it contains.");
+            }
+        }
+    }
+
+    /**
+     * A unit price for a type charged once enough products are bought.
+     *
+     * @param type the type of product priced.
+     * @param minQuantity the number of products that must be bought for the price to apply.
+     * @param unitPrice the price of each product, in cents.
+     */
+    record Tier(Barcode type, int minQuantity, int unitPrice) implements PricingRule {
+        /**
+         * Ensures the tier applies to a positive quantity at a price that is not negative.
+         */
+        public Tier {
+            if (minQuantity < 1 || unitPrice < 0) {
+                throw new IllegalArgumentException("A tier must apply from at least 1 product "
+                        + "at a price that is not negative.");
+            }
+        }
+    }
+
+    /**
+     * A percentage added to the price of products of a quality.
+     *
+     * @param quality the quality of product charged more.
+     * @param percent the percentage added.
+     */
+    record QualityPremium(Quality quality, int percent) implements PricingRule {
+        /**
+         * Ensures the premium does not take more than the whole price away.
+         */
+        public QualityPremium {
+            if (percent < -100) {
+                throw new IllegalArgumentException("A premium cannot be below -100%.");
+            }
+        }
+    }
+
+    /**
+     * A rule that only applies for a period of time.
+     *
+     * @param rule the rule applied.
+     * @param startMillis when the rule starts to apply, in milliseconds since the epoch.
+     * @param endMillis when the rule stops applying, in milliseconds since the epoch.
+     */
+    record TimeBoxed(PricingRule rule, long startMillis, long endMillis) implements PricingRule {
+        /**
+         * Ensures the period ends after it starts.
+         */
+        public TimeBoxed {
+            if (endMillis <= startMillis) {
+                throw new IllegalArgumentException("A promotion must end after it starts.");
+            }
+        }
+    }
+}
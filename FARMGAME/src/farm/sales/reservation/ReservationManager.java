@@ -0,0 +1,234 @@
+package farm.sales.reservation;
+
+import farm.core.FailedTransactionException;
+import farm.core.InvalidStockRequestException;
+import farm.inventory.Inventory;
+import farm.inventory.InventoryCapability;
+import farm.inventory.product.Product;
+import farm.inventory.product.data.*;
+import farm.sales.Cart;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Places timed holds on stock added to a cart, rather than removing it from the farm for good.
+ * <p>
+ * Held products are taken out of the inventory so that no other sale can claim them. Once the
+ * cart is checked out its holds are committed and the stock stays sold; if a hold is left for
+ * longer than the hold time, its products are taken back out of the cart and returned to the
+ * inventory. Expiry is tracked on a timing wheel, so the work done on each check is proportional
+ * to the holds that actually expire rather than to every hold that is open.
+ * <p>
+ * A reservation manager may be used by several tills at once. Open holds are tracked under the
+ * manager's own lock, which is only held briefly, while stock is taken from and returned to the
+ * inventory outside it; if the inventory is not thread-safe, the caller must serialise calls.
+ * A cart's holds are only changed while holding the cart's monitor, so tills filling different
+ * carts never wait on each other, and a hold never expires part way through a checkout.
+ */
+public class ReservationManager {
+
+    /**
+     * Number of buckets on the expiry wheel.
+     */
+    private static final int WHEEL_BUCKETS = 512;
+
+    /**
+     * Length of one tick of the expiry wheel, in milliseconds.
+     */
+    private static final long TICK_MILLIS = 1000;
+
+    /**
+     * Quality levels a product of any barcode can have, in ascending order of quality.
+     */
+    private static final Quality[] QUALITIES = Quality.values();
+
+    /**
+     * The inventory that held stock is taken from and returned to.
+     */
+    private final Inventory inventory;
+
+    /**
+     * How long a hold lasts before it expires, in milliseconds.
+     */
+    private final long holdMillis;
+
+    /**
+     * Source of the current time, in milliseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Schedules each open hold to expire.
+     */
+    private final TimingWheel<Hold> wheel;
+
+    /**
+     * The open holds belonging to each cart.
+     */
+    private final Map<Cart, Set<Hold>> holdsByCart;
+
+    /**
+     * Creates a reservation manager holding stock from the given inventory for the given
+     * number of milliseconds, measured by the system clock.
+     */
+    public ReservationManager(Inventory inventory, long holdMillis) {
+        this(inventory, holdMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a reservation manager holding stock from the given inventory for the given
+     * number of milliseconds, measured by the provided clock.
+     */
+    public ReservationManager(Inventory inventory, long holdMillis, LongSupplier clock) {
+        if (holdMillis < 1) {
+            throw new IllegalArgumentException("Hold time must be at least 1 millisecond.");
+        }
+        this.inventory = inventory;
+        this.holdMillis = holdMillis;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(WHEEL_BUCKETS, TICK_MILLIS, clock.getAsLong());
+        this.holdsByCart = new IdentityHashMap<>();
+    }
+
+    /**
+     * Takes up to the given quantity of products with the corresponding barcode out of the
+     * inventory and holds them for the cart, returning the products held. The caller should
+     * hold the cart's monitor until the products are in the cart, so the hold cannot expire
+     * before then.
+     */
+    public List<Product> hold(Cart cart, Barcode barcode, int quantity)
+            throws FailedTransactionException {
+        List<Product> products = quantity == 1
+                ? inventory.removeProduct(barcode)
+                : inventory.removeProduct(barcode, quantity);
+        if (products.isEmpty()) {
+            return products;
+        }
+        Hold hold = new Hold(cart, barcode);
+        for (Product product : products) {
+            hold.quantities[product.getQuality().ordinal()]++;
+        }
+        synchronized (this) {
+            hold.timeout = wheel.schedule(hold, clock.getAsLong() + holdMillis);
+            holdsByCart.computeIfAbsent(cart, k -> new HashSet<>()).add(hold);
+        }
+        return products;
+    }
+
+    /**
+     * Commits every open hold of the cart, so that its products stay out of the inventory.
+     */
+    public void commit(Cart cart) {
+        synchronized (cart) {
+            closeHolds(cart);
+        }
+    }
+
+    /**
+     * Releases every open hold of the cart, returning its products to the inventory.
+     * The products are left in the cart for the caller to discard.
+     */
+    public void release(Cart cart) {
+        synchronized (cart) {
+            for (Hold hold : closeHolds(cart)) {
+                restock(hold);
+            }
+        }
+    }
+
+    /**
+     * Expires every hold whose hold time has passed, taking its products back out of the cart
+     * they were held for and returning them to the inventory. Should not be called while
+     * holding a cart's monitor, as each expiring hold's cart is locked in turn.
+     */
+    public void expireHolds() {
+        List<Hold> expired = new ArrayList<>();
+        synchronized (this) {
+            wheel.advance(clock.getAsLong(), expired::add);
+        }
+        for (Hold hold : expired) {
+            expire(hold);
+        }
+    }
+
+    /**
+     * Retrieves the number of holds currently open.
+     */
+    public synchronized int getOpenHolds() {
+        return wheel.size();
+    }
+
+    /**
+     * Stops tracking every open hold of the cart, cancelling their expiry, and returns them.
+     */
+    private synchronized Set<Hold> closeHolds(Cart cart) {
+        Set<Hold> holds = holdsByCart.remove(cart);
+        if (holds == null) {
+            return Set.of();
+        }
+        for (Hold hold : holds) {
+            hold.timeout.cancel();
+        }
+        return holds;
+    }
+
+    /**
+     * Expires a single hold taken off the wheel, unless its cart was checked out or abandoned
+     * in the meantime.
+     */
+    private void expire(Hold hold) {
+        synchronized (hold.cart) {
+            synchronized (this) {
+                Set<Hold> holds = holdsByCart.get(hold.cart);
+                if (holds == null || !holds.remove(hold)) {
+                    return;
+                }
+                if (holds.isEmpty()) {
+                    holdsByCart.remove(hold.cart);
+                }
+            }
+            hold.cart.removeProducts(hold.barcode, hold.quantities);
+            restock(hold);
+        }
+    }
+
+    /**
+     * Returns the products of a hold to the inventory.
+     */
+    private void restock(Hold hold) {
+        boolean quantities = inventory.getCapabilities().contains(InventoryCapability.QUANTITIES);
+        for (int q = 0; q < QUALITIES.length; q++) {
+            int quantity = hold.quantities[q];
+            if (quantity == 0) {
+                continue;
+            }
+            if (quantities) {
+                try {
+                    inventory.addProduct(hold.barcode, QUALITIES[q], quantity);
+                } catch (InvalidStockRequestException e) {
+                    throw new IllegalStateException("Inventory rejected returned stock.", e);
+                }
+            } else {
+                for (int i = 0; i < quantity; i++) {
+                    inventory.addProduct(hold.barcode, QUALITIES[q]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Products of a single barcode held for a cart, counted by quality.
+     */
+    private static final class Hold {
+        private final Cart cart;
+        private final Barcode barcode;
+        private final int[] quantities = new int[QUALITIES.length];
+        private TimingWheel.Timeout<Hold> timeout;
+
+        private Hold(Cart cart, Barcode barcode) {
+            this.cart = cart;
+            this.barcode = barcode;
+        }
+    }
+}
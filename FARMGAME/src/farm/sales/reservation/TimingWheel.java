@@ -0,0 +1,164 @@
+package farm.sales.reservation;
+
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel which schedules items to expire at a given time.
+ * <p>
+ * Items are placed in one of a fixed number of buckets according to the tick they expire on,
+ * with items due more than one revolution away recording how many revolutions remain. Scheduling
+ * and cancelling are constant time, and advancing the wheel only visits the buckets for the ticks
+ * that have passed, so the cost of expiry does not grow with the number of items scheduled.
+ *
+ * @param <T> the type of item scheduled on the wheel.
+ */
+public class TimingWheel<T> {
+
+    /**
+     * Sentinel heads of the circular list of timeouts in each bucket.
+     */
+    private final Timeout<T>[] buckets;
+
+    /**
+     * Length of a single tick, in milliseconds.
+     */
+    private final long tickMillis;
+
+    /**
+     * The next tick whose bucket has not yet been processed.
+     */
+    private long currentTick;
+
+    /**
+     * Number of timeouts currently scheduled.
+     */
+    private int size;
+
+    /**
+     * Creates a timing wheel with the given number of buckets, each covering one tick of the
+     * given length, starting from the provided time in milliseconds.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(int bucketCount, long tickMillis, long startMillis) {
+        if (bucketCount < 1 || tickMillis < 1) {
+            throw new IllegalArgumentException("A timing wheel needs at least one bucket "
+                    + "and a tick of at least one millisecond.");
+        }
+        this.buckets = new Timeout[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Timeout<>(this, null);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        this.size = 0;
+    }
+
+    /**
+     * Schedules the item to expire once the wheel has been advanced to the given time
+     * in milliseconds, returning a handle through which it may be cancelled.
+     */
+    public Timeout<T> schedule(T item, long deadlineMillis) {
+        // Round up so that an item never expires before its deadline.
+        long tick = Math.max(Math.ceilDiv(deadlineMillis, tickMillis), currentTick);
+        Timeout<T> timeout = new Timeout<>(this, item);
+        timeout.rounds = (tick - currentTick) / buckets.length;
+        timeout.linkBefore(buckets[(int) (tick % buckets.length)]);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Advances the wheel to the given time in milliseconds, passing every item whose deadline
+     * has been reached to onExpiry. Expired items are removed from the wheel.
+     */
+    public void advance(long nowMillis, Consumer<? super T> onExpiry) {
+        long targetTick = nowMillis / tickMillis;
+        // With nothing scheduled there is nothing to expire, so skip straight to the target.
+        if (size == 0) {
+            currentTick = Math.max(currentTick, targetTick + 1);
+            return;
+        }
+        while (currentTick <= targetTick) {
+            Timeout<T> head = buckets[(int) (currentTick % buckets.length)];
+            Timeout<T> timeout = head.next;
+            while (timeout != head) {
+                Timeout<T> next = timeout.next;
+                if (timeout.rounds == 0) {
+                    timeout.unlink();
+                    size--;
+                    onExpiry.accept(timeout.item);
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+            currentTick++;
+        }
+    }
+
+    /**
+     * Retrieves the number of items currently scheduled.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A handle to an item scheduled on a timing wheel.
+     *
+     * @param <T> the type of item scheduled on the wheel.
+     */
+    public static final class Timeout<T> {
+        private final TimingWheel<T> wheel;
+        private final T item;
+        private long rounds;
+        private Timeout<T> previous = this;
+        private Timeout<T> next = this;
+
+        private Timeout(TimingWheel<T> wheel, T item) {
+            this.wheel = wheel;
+            this.item = item;
+        }
+
+        /**
+         * Retrieves the scheduled item.
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Determines whether the item is still waiting to expire.
+         */
+        public boolean isPending() {
+            return next != this;
+        }
+
+        /**
+         * Removes the item from the wheel so that it never expires.
+         * Returns false if the item had already expired or been cancelled.
+         */
+        public boolean cancel() {
+            if (!isPending()) {
+                return false;
+            }
+            unlink();
+            wheel.size--;
+            return true;
+        }
+
+        private void linkBefore(Timeout<T> head) {
+            previous = head.previous;
+            next = head;
+            head.previous.next = this;
+            head.previous = this;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = this;
+            next = this;
+        }
+    }
+}
@@ -26,11 +26,7 @@ public class CategorisedTransaction extends Transaction {
      * Retrieves all unique product types of the purchases associated with the transaction.
      */
     public Set<Barcode> getPurchasedTypes() {
-        Set<Barcode> types = new HashSet<>();
-        for (Product product : getPurchases()) {
-            types.add(product.getBarcode());
-        }
-        return types;
+        return getSummary().getTypes();
     }
 
     /**
@@ -38,7 +34,7 @@ public class CategorisedTransaction extends Transaction {
      */
     public Map<Barcode, List<Product>> getPurchasesByType() {
         Map<Barcode, List<Product>> purchasesByType = new HashMap<>();
-        for (Product product : getPurchases()) {
+        for (Product product : getPurchasesView()) {
             Barcode barcode = product.getBarcode();
             // Iff productList if null, create new array and put barcode, productList
             List<Product> productList =
@@ -53,25 +49,17 @@ public class CategorisedTransaction extends Transaction {
      * Retrieves the number of products of a particular type associated with the transaction.
      */
     public int getPurchaseQuantity(Barcode type) {
-        if (getPurchasesByType().containsKey(type)) {
-            return getPurchasesByType().get(type).size();
-        }
-        // If the type is not found in the map, return 0
-        return 0;
+        return getSummary().getQuantity(type);
     }
 
 
     /**
-     * Determines the total price for the provided product type within this transaction.
+     * Determines the total price for the provided product type within this transaction, before
+     * any discount or deal. This is the unit price of any volume tier reached times the
+     * quantity, plus any quality premiums.
      */
     public int getPurchaseSubtotal(Barcode type) {
-        int subtotal = 0;
-        // If the type exists in the map, return the base price multiplied by number of Products,
-        // since getPurchasesByType automatically groups by product type, hence BasePrices are equal
-        if (getPurchasesByType().containsKey(type)) {
-            subtotal += type.getBasePrice() * getPurchasesByType().get(type).size();
-        }
-        return subtotal;
+        return getSummary().getGross(type);
     }
 
 
@@ -85,12 +73,13 @@ public class CategorisedTransaction extends Transaction {
             return ReceiptPrinter.createActiveReceipt();
         }
         List<List<String>> entries = new ArrayList<>();
+        PurchaseSummary summary = getSummary();
 
         for (Barcode type : Barcode.values()) {
-            if (getPurchasedTypes().contains(type)) {
-                int quantity = getPurchaseQuantity(type);
-                int price = getPurchasesByType().get(type).getFirst().getBasePrice();
-                int subtotal = getPurchaseSubtotal(type);
+            int quantity = summary.getQuantity(type);
+            if (quantity > 0) {
+                int price = summary.getUnitPrice(type);
+                int subtotal = summary.getGross(type);
 
                 // Convert price and subtotal from cents to dollars as strings
                 String priceString = "$" + (price / 100) + "." + (price % 100 < 10 ? "0" : "")
@@ -107,7 +96,7 @@ public class CategorisedTransaction extends Transaction {
             }
         }
         // Calculate the total cost and convert to dollars as a string
-        int totalCents = getTotal();
+        int totalCents = summary.getNetTotal();
         String totalString = "$" + (totalCents / 100) + "."
                 + (totalCents % 100 < 10 ? "0" : "") + (totalCents % 100);
 
@@ -0,0 +1,201 @@
+package farm.sales.transaction;
+
+import farm.inventory.product.Product;
+import farm.inventory.product.data.Barcode;
+import farm.sales.pricing.PricingPlan;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The purchases of a transaction totalled by product type: how many of each type were bought,
+ * their price before any discount, the amount taken off by discounts and the price paid.
+ * <p>
+ * A summary counts the purchases in a single pass, prices the counts with a PricingPlan and
+ * never changes afterwards, so a finalised transaction computes its summary once and every
+ * receipt and statistic reads from it.
+ */
+public final class PurchaseSummary {
+
+    /**
+     * Product types, indexed by their ordinal.
+     */
+    private static final Barcode[] BARCODES = Barcode.values();
+
+    /**
+     * Number of products bought of each type.
+     */
+    private final int[] quantities;
+
+    /**
+     * Price charged for each product of each type before quality premiums, in cents.
+     */
+    private final int[] unitPrices;
+
+    /**
+     * Price before discount of the products bought of each type, in cents.
+     */
+    private final int[] gross;
+
+    /**
+     * Amount taken off the products bought of each type by bundle deals, in cents.
+     */
+    private final int[] dealSavings;
+
+    /**
+     * Amount taken off the products bought of each type by discounts, in cents.
+     */
+    private final int[] discounts;
+
+    /**
+     * Percentage taken off each type, in effect when the summary was made.
+     */
+    private final int[] percentsOff;
+
+    /**
+     * Number of products bought.
+     */
+    private final int totalQuantity;
+
+    /**
+     * Price before discount of every product bought, in cents.
+     */
+    private final int grossTotal;
+
+    /**
+     * Amount taken off by discounts across every product bought, in cents.
+     */
+    private final int discountTotal;
+
+    /**
+     * Summarises the purchases, priced by the given plan.
+     */
+    PurchaseSummary(List<Product> purchases, PricingPlan plan) {
+        quantities = new int[BARCODES.length];
+        unitPrices = new int[BARCODES.length];
+        gross = new int[BARCODES.length];
+        dealSavings = new int[BARCODES.length];
+        discounts = new int[BARCODES.length];
+        percentsOff = new int[BARCODES.length];
+        int[] counts = new int[PricingPlan.countSize()];
+        for (Product product : purchases) {
+            counts[PricingPlan.countIndex(product.getBarcode(), product.getQuality())]++;
+            quantities[product.getBarcode().ordinal()]++;
+        }
+        plan.price(counts, unitPrices, gross, dealSavings, discounts, percentsOff);
+        int products = 0;
+        int grossSum = 0;
+        int discountSum = 0;
+        for (int i = 0; i < BARCODES.length; i++) {
+            products += quantities[i];
+            grossSum += gross[i];
+            discountSum += discounts[i];
+        }
+        totalQuantity = products;
+        grossTotal = grossSum;
+        discountTotal = discountSum;
+    }
+
+    /**
+     * Retrieves every type of product bought.
+     */
+    public Set<Barcode> getTypes() {
+        Set<Barcode> types = EnumSet.noneOf(Barcode.class);
+        for (Barcode type : BARCODES) {
+            if (quantities[type.ordinal()] > 0) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Retrieves the number of products bought of the given type.
+     */
+    public int getQuantity(Barcode type) {
+        return quantities[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the price charged for each product of the given type before quality premiums,
+     * in cents. This is the base price unless a volume tier was reached.
+     */
+    public int getUnitPrice(Barcode type) {
+        return unitPrices[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the price before discount of the products bought of the given type, in cents.
+     */
+    public int getGross(Barcode type) {
+        return gross[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the amount added to the price of the products bought of the given type by
+     * quality premiums, in cents.
+     */
+    public int getPremium(Barcode type) {
+        return gross[type.ordinal()] - unitPrices[type.ordinal()] * quantities[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the amount taken off the products bought of the given type by bundle deals,
+     * in cents. This is included in the discount.
+     */
+    public int getDealSaving(Barcode type) {
+        return dealSavings[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the amount taken off the products bought of the given type, in cents.
+     */
+    public int getDiscount(Barcode type) {
+        return discounts[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the percentage taken off the given type when the summary was made, or 0 if
+     * there was none.
+     */
+    public int getPercentOff(Barcode type) {
+        return percentsOff[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the price paid for the products bought of the given type, in cents.
+     */
+    public int getNet(Barcode type) {
+        return gross[type.ordinal()] - discounts[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the number of products bought.
+     */
+    public int getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    /**
+     * Retrieves the price before discount of every product bought, in cents.
+     */
+    public int getGrossTotal() {
+        return grossTotal;
+    }
+
+    /**
+     * Retrieves the amount taken off by discounts across every product bought, in cents.
+     */
+    public int getDiscountTotal() {
+        return discountTotal;
+    }
+
+    /**
+     * Retrieves the price paid for every product bought, in cents.
+     */
+    public int getNetTotal() {
+        // Discounts were rounded per type, so this matches summing the net of each type.
+        return grossTotal - discountTotal;
+    }
+}
@@ -4,25 +4,28 @@ import farm.customer.Customer;
 import farm.inventory.product.data.Barcode;
 import farm.inventory.product.Product;
 import farm.sales.ReceiptPrinter;
+import farm.sales.pricing.PricingPlan;
 import java.util.*;
 
 /**
  * A transaction type that builds on the functionality of a categorised transaction,
  * allowing store-wide discounts to be applied to all products of a nominated type.
+ * <p>
+ * Prices are worked out by a PricingPlan, so a special sale may also offer bundle deals,
+ * volume tiers, quality premiums and time-boxed promotions.
  */
 public class SpecialSaleTransaction extends CategorisedTransaction {
     /**
-     * Map allocating all discounts for each Product type.
+     * Plan pricing the purchases.
      */
-    private final Map<Barcode, Integer> discounts;
+    private final PricingPlan plan;
 
     /**
      * Construct a new special sale transaction for an associated customer, with an empty
      * set of discounts (i.e. no products are to be sold at a discount).
      */
     public SpecialSaleTransaction(Customer customer) {
-        super(customer);
-        this.discounts = new HashMap<>();
+        this(customer, new HashMap<>());
     }
 
     /**
@@ -31,53 +34,50 @@ public class SpecialSaleTransaction extends CategorisedTransaction {
      */
     public SpecialSaleTransaction(Customer customer, Map<Barcode, Integer> discounts) {
         super(customer);
-        this.discounts = new HashMap<>(discounts);
+        this.plan = PricingPlan.ofDiscounts(discounts);
+    }
+
+    /**
+     * Construct a new special sale transaction for an associated customer, priced by the
+     * given plan.
+     */
+    public SpecialSaleTransaction(Customer customer, PricingPlan plan) {
+        super(customer);
+        this.plan = plan;
     }
 
     /**
      * Retrieves the discount percentage that will be applied for a particular product type,
-     * as an integer (e.g. for a 10% discount, this method should return 10).
+     * as an integer (e.g. for a 10% discount, this method should return 10). Once finalised,
+     * this is the percentage the purchases were priced with.
      */
     public int getDiscountAmount(Barcode type) {
-        return discounts.getOrDefault(type, 0);
+        return isFinalised() ? getSummary().getPercentOff(type) : plan.getPercentOff(type);
     }
 
     /**
-     * Determines the total price for the provided product type within this transaction,
-     * with any specified discount applied as an integer percentage taken from the usual subtotal.
+     * Retrieves the plan pricing the purchases.
      */
     @Override
-    public int getPurchaseSubtotal(Barcode type) {
-        int subtotal = super.getPurchaseSubtotal(type); // Get the base subtotal without discount
-        int discount = getDiscountAmount(type); // Get the applicable discount for this product type
-        return subtotal - (subtotal * discount / 100); // Apply the discount and return the adjusted
+    public PricingPlan getPricingPlan() {
+        return plan;
     }
 
     /**
-     * Calculates the total price (with discounts) of all the current products in the transaction.
+     * Determines the total price for the provided product type within this transaction,
+     * with any specified discount applied as an integer percentage taken from the usual subtotal.
      */
     @Override
-    public int getTotal() {
-        int total = 0;
-        // Iterate over all purchased types and accumulate the total with discounts applied
-        for (Barcode type : getPurchasedTypes()) {
-            total += getPurchaseSubtotal(type);
-        }
-        return total;
+    public int getPurchaseSubtotal(Barcode type) {
+        // Priced by the plan: percentage discounts take subtotal * discount / 100 off.
+        return getSummary().getNet(type);
     }
 
     /**
      * Calculates how much the customer has saved from discounts.
      */
     public int getTotalSaved() {
-        int totalSaved = 0;
-        // Iterate over all purchased types and calculate the total savings from discounts
-        for (Barcode type : getPurchasedTypes()) {
-            int subtotal = super.getPurchaseSubtotal(type); // Original subtotal before discount
-            int discount = getDiscountAmount(type); // Get the discount percentage for this type
-            totalSaved += subtotal * discount / 100; // Calculate and accumulate the savings
-        }
-        return totalSaved;
+        return getSummary().getDiscountTotal();
     }
 
     /**
@@ -91,51 +91,51 @@ public class SpecialSaleTransaction extends CategorisedTransaction {
         }
 
         List<List<String>> entries = new ArrayList<>();
+        PurchaseSummary summary = getSummary();
 
         // Iterate over all barcode types in the enum to build receipt entries
         for (Barcode type : Barcode.values()) {
             // Check if the current barcode type was purchased
-            if (getPurchasedTypes().contains(type)) {
-                int quantity = getPurchaseQuantity(type);
-                int price = getPurchasesByType().get(type).getFirst().getBasePrice();
-                int subtotal = getPurchaseSubtotal(type);
-
-                // Convert price and subtotal from cents to dollars as strings
-                String priceString = "$" + (price / 100) + "."
-                        + (price % 100 < 10 ? "0" : "")
-                        + (price % 100);
-                String subtotalString = "$" + (subtotal / 100) + "."
-                        + (subtotal % 100 < 10 ? "0" : "")
-                        + (subtotal % 100);
+            int quantity = summary.getQuantity(type);
+            if (quantity > 0) {
+                int price = summary.getUnitPrice(type);
+                int subtotal = summary.getNet(type);
 
                 // Build the entry for this product type
                 List<String> entry = new ArrayList<>();
                 entry.add(type.getDisplayName());             // Product name
                 entry.add(String.valueOf(quantity));          // Quantity
-                entry.add(priceString);                       // Price per unit
-                entry.add(subtotalString);                    // Subtotal after discount
-
-                // Add discount information if a discount was applied
-                if (getDiscountAmount(type) > 0) {
-                    String discountInfo = "Discount applied! "
-                            + getDiscountAmount(type) + "% off " + type.getDisplayName();
-                    entry.add(discountInfo);
+                entry.add(toDollars(price));                  // Price per unit
+                entry.add(toDollars(subtotal));               // Subtotal after discount
+
+                // Note any quality premium charged on top of the unit price, and any deal or
+                // discount applied; the ReceiptPrinter wraps each onto its own line
+                int premium = summary.getPremium(type);
+                if (premium > 0) {
+                    entry.add("Quality premium: " + toDollars(premium) + " on "
+                            + type.getDisplayName());
+                }
+                int percent = summary.getPercentOff(type);
+                if (percent > 0) {
+                    entry.add("Discount applied! " + percent + "% off " + type.getDisplayName());
+                }
+                int dealSaving = summary.getDealSaving(type);
+                if (dealSaving > 0) {
+                    entry.add("Deal applied! " + toDollars(dealSaving) + " off "
+                            + type.getDisplayName());
                 }
                 entries.add(entry); // Add the entry to the list of entries
             }
         }
 
         // Calculate the total and total savings for the receipt
-        int totalCents = getTotal();
-        String total = "$" + (totalCents / 100) + "."
-                + (totalCents % 100 < 10 ? "0" : "") + (totalCents % 100);
+        String total = toDollars(summary.getNetTotal());
 
-        int totalSavedCents = getTotalSaved();
-        String totalSaved = "$" + (totalSavedCents / 100) + "."
-                + (totalSavedCents % 100 < 10 ? "0" : "") + (totalSavedCents % 100);
+        int totalSavedCents = summary.getDiscountTotal();
+        String totalSaved = toDollars(totalSavedCents);
 
         // If savings were made, include them in the receipt
-        if (getTotalSaved() > 0) {
+        if (totalSavedCents > 0) {
             return ReceiptPrinter.createReceipt(
                     List.of("Item", "Qty", "Price (ea.)", "Subtotal"),
                     entries, total, getAssociatedCustomer().getName(), totalSaved);
@@ -157,14 +157,21 @@ public class SpecialSaleTransaction extends CategorisedTransaction {
         StringBuilder productsString = new StringBuilder();
 
         // Build a string listing all products in the transaction
-        for (Product product : getPurchases()) {
+        for (Product product : getPurchasesView()) {
             if (!productsString.isEmpty()) {
                 productsString.append(", ");
             }
             productsString.append(product.toString());
         }
 
-        // Convert the discounts map to a string
+        // Convert the discounts in effect, or those applied once finalised, to a string
+        Map<Barcode, Integer> discounts = new HashMap<>();
+        for (Barcode type : Barcode.values()) {
+            int percent = getDiscountAmount(type);
+            if (percent != 0) {
+                discounts.put(type, percent);
+            }
+        }
         String discountsString = discounts.toString();
 
         // Build the string representation of the transaction
@@ -176,4 +183,11 @@ public class SpecialSaleTransaction extends CategorisedTransaction {
                 + status + ", Associated Products: [" + productsString
                 + "], Discounts: " + discountsString + "}";
     }
+
+    /**
+     * Formats an amount in cents as dollars, e.g. $4.05.
+     */
+    private static String toDollars(int cents) {
+        return "$" + (cents / 100) + "." + (cents % 100 < 10 ? "0" : "") + (cents % 100);
+    }
 }
\ No newline at end of file
@@ -2,11 +2,18 @@ package farm.sales.transaction;
 
 import farm.customer.Customer;
 import farm.inventory.product.Product;
+import farm.sales.Cart;
+import farm.sales.CartPool;
 import farm.sales.ReceiptPrinter;
+import farm.sales.pricing.PricingPlan;
 import java.util.*;
 
 /**
  * Transactions keep track of what items are to be (or have been) purchased and by whom.
+ * <p>
+ * While active, a transaction holds its own cart, taken from the CartPool, into which any
+ * products its customer had already picked are moved. When it is finalised, the cart's contents
+ * become the purchases and the cart is emptied and handed back to the pool.
  */
 public class Transaction {
     /**
@@ -15,9 +22,24 @@ public class Transaction {
     private final Customer customer;
 
     /**
-     * List of products that the customer is purchasing.
+     * The cart holding the products being purchased, or null once finalised.
      */
-    private final List<Product> purchases;
+    private Cart cart;
+
+    /**
+     * List of products that the customer purchased, empty until finalised.
+     */
+    private List<Product> purchases;
+
+    /**
+     * Read-only view of the products in the cart while active, and the purchases once finalised.
+     */
+    private final List<Product> purchasesView;
+
+    /**
+     * Purchases totalled by type, or null until finalised.
+     */
+    private PurchaseSummary summary;
 
     /**
      * Boolean flag to indicate whether the transaction is finalized.
@@ -31,8 +53,11 @@ public class Transaction {
      */
     public Transaction(Customer customer) {
         this.customer = customer;
-        // Initialize the purchases list with the contents of the customer's cart.
-        this.purchases = new ArrayList<>(customer.getCart().getContents());
+        this.cart = CartPool.acquire();
+        // Products the customer already picked become part of the transaction.
+        customer.moveCartInto(cart);
+        this.purchases = List.of();
+        this.purchasesView = new PurchasesView();
         this.isFinalised = false; // Initially, the transaction is not finalized.
     }
 
@@ -45,6 +70,15 @@ public class Transaction {
         return customer;
     }
 
+    /**
+     * Retrieves the cart holding the products being purchased, or null once finalised.
+     *
+     * @return The cart of the active transaction.
+     */
+    public Cart getCart() {
+        return cart;
+    }
+
     /**
      * Retrieves all products associated with the transaction.
      *
@@ -52,28 +86,81 @@ public class Transaction {
      */
     public List<Product> getPurchases() {
         // If the transaction is finalized, return the finalized purchases.
-        // Otherwise, return the current contents of the customer's cart.
+        // Otherwise, return the current contents of the cart.
         if (isFinalised) {
             return new ArrayList<>(purchases);
         } else {
-            return new ArrayList<>(customer.getCart().getContents());
+            return cart.getContents();
         }
     }
 
+    /**
+     * Retrieves a read-only view of the products associated with the transaction, without
+     * copying them. While the transaction is active the view follows the contents of its cart,
+     * and once finalised it holds the purchases.
+     *
+     * @return A view of the products in the transaction.
+     */
+    public List<Product> getPurchasesView() {
+        return purchasesView;
+    }
+
+    /**
+     * Retrieves the number of products associated with the transaction.
+     *
+     * @return The number of products in the transaction.
+     */
+    public int getPurchaseCount() {
+        return isFinalised ? purchases.size() : cart.size();
+    }
+
+    /**
+     * Retrieves the product at the given position in the transaction.
+     *
+     * @param index The position of the product, in the order products were added.
+     * @return The product at that position.
+     */
+    public Product getPurchase(int index) {
+        return isFinalised ? purchases.get(index) : cart.get(index);
+    }
+
     /**
      * Calculates the total price of all the current products in the transaction.
      *
      * @return The total price in cents.
      */
     public int getTotal() {
-        int total = 0;
-        // Choose the correct product list based on whether the transaction is finalized.
-        List<Product> products = isFinalised ? purchases : customer.getCart().getContents();
-        // Sum the base prices of all products in the list.
-        for (Product product : products) {
-            total += product.getBasePrice();
-        }
-        return total;
+        return getSummary().getNetTotal();
+    }
+
+    /**
+     * Retrieves the purchases totalled by type. A finalised transaction summarises its purchases
+     * once, when finalised; an active one summarises the current cart on each call.
+     *
+     * @return The summary of the purchases.
+     */
+    public PurchaseSummary getSummary() {
+        return isFinalised ? summary : summarise(cart.getContentsView());
+    }
+
+    /**
+     * Retrieves the plan pricing the purchases. Transactions that discount their purchases
+     * override this to return their own plan.
+     *
+     * @return The plan pricing this transaction, which by default charges base prices.
+     */
+    public PricingPlan getPricingPlan() {
+        return PricingPlan.NONE;
+    }
+
+    /**
+     * Totals the given purchases by type, priced by the transaction's plan.
+     *
+     * @param products The products to summarise.
+     * @return The summary of the products.
+     */
+    private PurchaseSummary summarise(List<Product> products) {
+        return new PurchaseSummary(products, getPricingPlan());
     }
 
     /**
@@ -86,17 +173,17 @@ public class Transaction {
     }
 
     /**
-     * Finalizes the transaction by storing the current contents of the customer's cart
-     * as the finalized purchases and clearing the cart.
+     * Finalizes the transaction by storing the current contents of the cart as the
+     * finalized purchases and handing the emptied cart back to the pool.
      */
     public void finalise() {
         if (!isFinalised) {
-            // Clear the existing purchases list and add the current cart contents to it.
-            purchases.clear();
-            purchases.addAll(customer.getCart().getContents());
-            // Clear the customer's cart as the transaction is now finalized.
-            customer.getCart().setEmpty();
+            purchases = cart.getContents();
+            summary = summarise(purchases);
             isFinalised = true;
+            // The cart can now be reused for another sale.
+            CartPool.release(cart);
+            cart = null;
         }
     }
 
@@ -112,7 +199,7 @@ public class Transaction {
         StringBuilder productsString = new StringBuilder();
 
         // Build a string listing all products in the transaction.
-        for (Product product : getPurchases()) {
+        for (Product product : getPurchasesView()) {
             if (!productsString.isEmpty()) {
                 productsString.append(", ");
             }
@@ -164,4 +251,21 @@ public class Transaction {
                 customer.getName()
         );
     }
+
+    /**
+     * A read-only list of the products in the transaction, reading from the cart while the
+     * transaction is active and from the purchases once finalised, so it never sees a cart
+     * after it has been handed back to the pool.
+     */
+    private final class PurchasesView extends AbstractList<Product> implements RandomAccess {
+        @Override
+        public Product get(int index) {
+            return getPurchase(index);
+        }
+
+        @Override
+        public int size() {
+            return getPurchaseCount();
+        }
+    }
 }